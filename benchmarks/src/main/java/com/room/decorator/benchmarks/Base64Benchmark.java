@@ -0,0 +1,58 @@
+package com.room.decorator.benchmarks;
+
+import com.room.decorator.image.ImageBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Base64 of multi-megabyte images: the data URL sent to Vision/Stability, the inline response field
+// and the decode of a JSON upload
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base64Benchmark {
+
+    // 1, 4 and 8 MB
+    @Param({"1048576", "4194304", "8388608"})
+    private int bytes;
+
+    private byte[] image;
+    private String encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        image = Fixtures.randomBytes(bytes);
+        encoded = Base64.getEncoder().encodeToString(image);
+    }
+
+    // A fresh buffer each time, since ImageBuffer keeps its encoding once computed
+    @Benchmark
+    public ImageBuffer.EncodedImage encodeDataUrl() {
+        return ImageBuffer.wrap(image).dataUrl();
+    }
+
+    @Benchmark
+    public String encodeToString() {
+        return Base64.getEncoder().encodeToString(image);
+    }
+
+    @Benchmark
+    public ImageBuffer decodeUpload() {
+        return ImageBuffer.fromBase64(encoded);
+    }
+}
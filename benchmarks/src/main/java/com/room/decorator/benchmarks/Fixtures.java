@@ -0,0 +1,118 @@
+package com.room.decorator.benchmarks;
+
+import com.room.decorator.image.ElementHistogram;
+import com.room.decorator.image.ImagePreprocessor;
+import com.room.decorator.model.DecorationRequest;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.service.ImageAnalysisService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_java;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Inputs shared by the suites, built without a Spring context; fixed seeds keep runs comparable
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    // The org.opencv classes come from the bytedeco build and need its JNI libraries
+    static void loadOpenCv() {
+        Loader.load(opencv_java.class);
+    }
+
+    // Same settings as application.properties, with observations going to a no-op registry
+    static ImagePreprocessor imagePreprocessor() {
+        ImagePreprocessor preprocessor = new ImagePreprocessor(new SimpleMeterRegistry());
+        preprocessor.setMaxEdge(1024);
+        preprocessor.setFormat("jpg");
+        preprocessor.setQuality(85);
+        preprocessor.setObservations(new PipelineObservations(ObservationRegistry.NOOP));
+        return preprocessor;
+    }
+
+    // A JPEG that looks enough like a room to give Canny and findContours real work:
+    // a gradient wall, furniture-sized boxes of several aspect ratios and sensor-like noise
+    static byte[] roomPhoto(int width, int height) {
+        Mat image = new Mat(height, width, CvType.CV_8UC3);
+        try {
+            for (int row = 0; row < height; row++) {
+                double shade = 150 + 80.0 * row / height;
+                image.row(row).setTo(new Scalar(shade * 0.8, shade * 0.9, shade));
+            }
+
+            Random random = new Random(42);
+            for (int i = 0; i < 24; i++) {
+                int w = width / 12 + random.nextInt(width / 4);
+                int h = height / 12 + random.nextInt(height / 5);
+                int x = random.nextInt(Math.max(1, width - w));
+                int y = height / 3 + random.nextInt(Math.max(1, height * 2 / 3 - h));
+                Scalar color = new Scalar(random.nextInt(200), random.nextInt(200), random.nextInt(200));
+                Imgproc.rectangle(image, new Point(x, y), new Point(x + w, y + h), color, -1);
+            }
+
+            Mat noise = new Mat(height, width, CvType.CV_8UC3);
+            Core.randn(noise, 0, 8);
+            Core.add(image, noise, image);
+            noise.release();
+
+            MatOfByte encoded = new MatOfByte();
+            Imgcodecs.imencode(".jpg", image, encoded, new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 90));
+            byte[] bytes = encoded.toArray();
+            encoded.release();
+            return bytes;
+        } finally {
+            image.release();
+        }
+    }
+
+    static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(7).nextBytes(data);
+        // JPEG signature so the media type sniffing takes its usual path
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[2] = (byte) 0xFF;
+        return data;
+    }
+
+    // "vision": a completed analysis with a Vision answer; "local": contour histogram only
+    static ImageAnalysisService.RoomAnalysis roomAnalysis(String source) {
+        ElementHistogram histogram = new ElementHistogram();
+        histogram.record(ElementHistogram.ElementClass.SOFA, 40, 300, 620, 420);
+        histogram.record(ElementHistogram.ElementClass.TABLE, 250, 380, 420, 450);
+        histogram.record(ElementHistogram.ElementClass.CHAIR, 600, 320, 700, 430);
+        histogram.record(ElementHistogram.ElementClass.CHAIR, 720, 330, 810, 440);
+
+        if ("local".equals(source)) {
+            return new ImageAnalysisService.RoomAnalysis(histogram.labels(), histogram, null, "",
+                                                         "Living Room", "Natural", "Neutral");
+        }
+
+        ImageAnalysisService.VisionAnalysis vision = new ImageAnalysisService.VisionAnalysis(
+            "Living Room",
+            Arrays.asList("sofa", "coffee table", "armchair", "floor lamp", "bookshelf", "rug"),
+            Arrays.asList("beige", "walnut", "sage green", "off-white"),
+            "Natural", "Warm", "mid-century modern",
+            "A bright living room with a long sofa facing a low coffee table.");
+        return new ImageAnalysisService.RoomAnalysis(vision.getFurniture(), histogram, null, null, vision,
+                                                     vision.getDescription(), vision.getRoomType(),
+                                                     vision.getLighting(), vision.getColorScheme());
+    }
+
+    static DecorationRequest decorationRequest(String style) {
+        return new DecorationRequest(style, null, "navy and brass", "medium", true, false);
+    }
+}
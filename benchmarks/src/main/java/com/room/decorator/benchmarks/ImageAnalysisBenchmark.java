@@ -0,0 +1,76 @@
+package com.room.decorator.benchmarks;
+
+import com.room.decorator.image.ColorStatistics;
+import com.room.decorator.image.ElementHistogram;
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.image.ImagePreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// The local OpenCV stages of ImageAnalysisService. prepare scales with the upload size; the detection and
+// colour stages run on the prepared copy, as in production, so they only grow up to app.image.max-edge
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageAnalysisBenchmark {
+
+    // Typical webcam, laptop, phone (12 MP) and high-end phone uploads
+    @Param({"640x480", "1280x960", "4032x3024", "6000x4000"})
+    private String size;
+
+    // Matches app.analysis.stats-max-edge
+    private static final int STATS_MAX_EDGE = 128;
+
+    private ImagePreprocessor preprocessor;
+    private ImageBuffer upload;
+    private ImagePreprocessor.PreparedImage prepared;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.loadOpenCv();
+        String[] dimensions = size.split("x");
+        preprocessor = Fixtures.imagePreprocessor();
+        upload = ImageBuffer.wrap(Fixtures.roomPhoto(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1])));
+        prepared = preprocessor.prepare(upload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        prepared.release();
+    }
+
+    // Decode, downscale and re-encode for the Vision call
+    @Benchmark
+    public void prepare(Blackhole blackhole) {
+        ImagePreprocessor.PreparedImage image = preprocessor.prepare(upload);
+        blackhole.consume(image.getEncoded());
+        image.release();
+    }
+
+    @Benchmark
+    public ElementHistogram elementDetection() {
+        return ElementHistogram.detect(prepared.getImage());
+    }
+
+    @Benchmark
+    public ColorStatistics colorStatistics() {
+        return ColorStatistics.of(prepared.getImage(), STATS_MAX_EDGE);
+    }
+}
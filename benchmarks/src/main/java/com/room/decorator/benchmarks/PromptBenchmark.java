@@ -0,0 +1,50 @@
+package com.room.decorator.benchmarks;
+
+import com.room.decorator.model.DecorationRequest;
+import com.room.decorator.model.DesignStyle;
+import com.room.decorator.service.DecorationPromptBuilder;
+import com.room.decorator.service.ImageAnalysisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The text prompt built for every variation of every decoration request
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBenchmark {
+
+    // vision: furniture and palette from the Vision answer | local: contour histogram summary
+    @Param({"vision", "local"})
+    private String analysis;
+
+    private DesignStyle style;
+    private ImageAnalysisService.RoomAnalysis roomAnalysis;
+    private DecorationRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        style = DesignStyle.fromString("modern");
+        roomAnalysis = Fixtures.roomAnalysis(analysis);
+        request = Fixtures.decorationRequest("modern");
+    }
+
+    @Benchmark
+    public String createDecorationPrompt() {
+        return DecorationPromptBuilder.build(style, roomAnalysis, request, 2);
+    }
+}
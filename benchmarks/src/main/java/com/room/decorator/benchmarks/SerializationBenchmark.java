@@ -0,0 +1,71 @@
+package com.room.decorator.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.room.decorator.model.DecoratedRoomOption;
+import com.room.decorator.model.DecorationResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of a DecorationResponse with three options carrying inline base64 images,
+// the payload of app.decoration.inline-base64 responses and of stored job results
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    // Size of each generated image before encoding: 1 and 3 MB
+    @Param({"1048576", "3145728"})
+    private int imageBytes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private DecorationResponse response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String imageBase64 = Base64.getEncoder().encodeToString(Fixtures.randomBytes(imageBytes));
+        List<DecoratedRoomOption> options = new ArrayList<>();
+        for (int variation = 1; variation <= 3; variation++) {
+            options.add(new DecoratedRoomOption(
+                "option-" + variation, "Modern", imageBase64,
+                "This Modern design transforms your living room with clean lines and a neutral palette.",
+                Arrays.asList("Floor lamp", "Area rug", "Wall art"),
+                Arrays.asList("Sofa", "Coffee table"),
+                0.9));
+        }
+        response = new DecorationResponse(options, "A bright living room with a long sofa.", true,
+                                          "Successfully generated 3 decoration options");
+    }
+
+    // Streamed the way the HTTP message converter writes a response body
+    @Benchmark
+    public void writeToStream() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), response);
+    }
+
+    // Built in memory the way a job result is stored
+    @Benchmark
+    public String writeValueAsString() throws IOException {
+        return objectMapper.writeValueAsString(response);
+    }
+}
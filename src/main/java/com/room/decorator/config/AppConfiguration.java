@@ -1,14 +1,127 @@
 package com.room.decorator.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.room.decorator.observability.PipelineObservations;
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.channel.ChannelOption;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Duration;
 
 @Configuration
 public class AppConfiguration {
 
+@Value("${app.http.max-connections:100}")
+private int maxConnections;
+
+// Pools are keyed by host, so this is also the concurrency limit towards a single AI provider
+@Value("${app.http.max-connections-per-host:20}")
+private int maxConnectionsPerHost;
+
+@Value("${app.http.connect-timeout-ms:5000}")
+private int connectTimeoutMs;
+
+@Value("${app.http.read-timeout-ms:90000}")
+private long readTimeoutMs;
+
+@Value("${app.http.idle-timeout-seconds:30}")
+private long idleTimeoutSeconds;
+
+@Bean(destroyMethod = "close")
+public CloseableHttpClient outboundHttpClient() {
+   // Keep-alive connections are reused across calls, so the TLS handshake with a provider happens once per connection
+   PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+       .setMaxConnTotal(maxConnections)
+       .setMaxConnPerRoute(maxConnectionsPerHost)
+       .setDefaultConnectionConfig(ConnectionConfig.custom()
+           .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+           .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+           .setTimeToLive(TimeValue.ofMinutes(5))
+           .build())
+       .build();
+
+   // Responses are decompressed transparently; the client advertises gzip/deflate by default
+   return HttpClients.custom()
+       .setConnectionManager(connectionManager)
+       .setDefaultRequestConfig(RequestConfig.custom()
+           .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+           .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+           .build())
+       .evictExpiredConnections()
+       .evictIdleConnections(TimeValue.ofSeconds(idleTimeoutSeconds))
+       .build();
+}
+
+// The one RestTemplate every service injects, backed by the pooled client, so connections to the providers are reused
 @Bean
-public RestTemplate restTemplate() {
-   return new RestTemplate();
+public RestTemplate restTemplate(CloseableHttpClient outboundHttpClient, ObservationRegistry observationRegistry) {
+   RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(outboundHttpClient));
+   // Built by hand rather than from RestTemplateBuilder, so http.client.requests observations are wired here
+   restTemplate.setObservationRegistry(observationRegistry);
+   return restTemplate;
+}
+
+@Bean
+public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper, 
+                                                                               PipelineObservations observations) {
+   // Replaces Boot's converter to time response serialization; the body streams out as it is written,
+   // so a slow client shows up here too
+   return new MappingJackson2HttpMessageConverter(objectMapper) {
+       @Override
+       protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+           observations.stage("json.serialize").observeChecked(() -> {
+               super.writeInternal(object, type, outputMessage);
+               return null;
+           });
+       }
+   };
+}
+
+@Bean(destroyMethod = "dispose")
+public ConnectionProvider outboundConnectionProvider() {
+   return ConnectionProvider.builder("outbound")
+       .maxConnections(maxConnectionsPerHost)
+       .pendingAcquireTimeout(Duration.ofMillis(connectTimeoutMs))
+       .maxIdleTime(Duration.ofSeconds(idleTimeoutSeconds))
+       .evictInBackground(Duration.ofSeconds(idleTimeoutSeconds))
+       .metrics(true)
+       .build();
+}
+
+@Bean
+public WebClient webClient(WebClient.Builder builder, ConnectionProvider outboundConnectionProvider) {
+   // HTTP/2 is negotiated over TLS via ALPN where the provider offers it, falling back to HTTP/1.1
+   HttpClient httpClient = HttpClient.create(outboundConnectionProvider)
+       .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+       .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+       .responseTimeout(Duration.ofMillis(readTimeoutMs))
+       .compress(true);
+
+   // Generated images are several megabytes, well past the default 256KB codec buffer
+   return builder
+       .clientConnector(new ReactorClientHttpConnector(httpClient))
+       .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(32 * 1024 * 1024))
+       .build();
 }
 }
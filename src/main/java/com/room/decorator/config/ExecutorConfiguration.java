@@ -0,0 +1,134 @@
+package com.room.decorator.config;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class ExecutorConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorConfiguration.class);
+
+    // Captures every registered ThreadLocalAccessor, the observation scope included
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    // Callers run the task themselves while the pool is saturated, which throttles them. Once the pool is shut down
+    // the task is refused instead; CallerRunsPolicy would silently discard it and leave its future incomplete
+    private static final RejectedExecutionHandler CALLER_RUNS_UNTIL_SHUTDOWN = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        task.run();
+    };
+
+    // "bounded" uses the app.thread-pool.* sizes, "virtual" uses a virtual thread per task on JDK 21+
+    @Value("${app.thread-pool.mode:bounded}")
+    private String mode;
+
+    @Value("${app.thread-pool.core-size:5}")
+    private int coreSize;
+
+    @Value("${app.thread-pool.max-size:10}")
+    private int maxSize;
+
+    @Value("${app.thread-pool.queue-capacity:25}")
+    private int queueCapacity;
+
+    // Threads for analysis stages in bounded mode; a stage finding them all busy runs on the thread handing it over
+    @Value("${app.thread-pool.analysis-max-size:32}")
+    private int analysisMaxSize;
+
+    @Value("${app.thread-pool.shutdown-timeout-seconds:30}")
+    private long shutdownTimeoutSeconds;
+
+    private final List<ExecutorService> managedExecutors = new ArrayList<>();
+
+    @Bean(destroyMethod = "")
+    public ExecutorService decorationExecutor(MeterRegistry meterRegistry) {
+        ExecutorService executor = newVirtualThreadExecutorIfRequested();
+        if (executor == null) {
+            // Callers run the task themselves once the queue is full, which throttles new requests
+            executor = new ThreadPoolExecutor(
+                coreSize, maxSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("decoration-"),
+                CALLER_RUNS_UNTIL_SHUTDOWN
+            );
+        }
+        return manage(executor, "decoration", meterRegistry);
+    }
+
+    @Bean(destroyMethod = "")
+    public ExecutorService analysisExecutor(MeterRegistry meterRegistry) {
+        ExecutorService executor = newVirtualThreadExecutorIfRequested();
+        if (executor == null) {
+            // Analysis stages wait on each other, so nothing is queued here where it could starve the pool:
+            // a stage gets an idle or new thread up to the bound, or runs on the thread handing it over
+            executor = new ThreadPoolExecutor(
+                0, Math.max(1, analysisMaxSize), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new CustomizableThreadFactory("analysis-"),
+                CALLER_RUNS_UNTIL_SHUTDOWN
+            );
+        }
+        return manage(executor, "analysis", meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdownExecutors() {
+        managedExecutors.forEach(ExecutorService::shutdown);
+
+        for (ExecutorService executor : managedExecutors) {
+            try {
+                if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                    logger.warn("Executor did not finish within {}s, interrupting remaining tasks", shutdownTimeoutSeconds);
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private ExecutorService manage(ExecutorService executor, String name, MeterRegistry meterRegistry) {
+        managedExecutors.add(executor);
+        // Publishes executor.queued, executor.active, executor.pool.size and task timings
+        ExecutorService monitored = ExecutorServiceMetrics.monitor(meterRegistry, executor, name);
+        // Tasks run under the submitter's current observation, so stages on pool threads join the request's trace
+        return ContextExecutorService.wrap(monitored, CONTEXT_SNAPSHOTS::captureAll);
+    }
+
+    private ExecutorService newVirtualThreadExecutorIfRequested() {
+        if (!"virtual".equalsIgnoreCase(mode)) {
+            return null;
+        }
+
+        // Looked up reflectively so the application still builds and runs on JDK 17
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads require JDK 21+, falling back to the bounded thread pool");
+            return null;
+        }
+    }
+}
@@ -1,23 +1,40 @@
 // RoomDecoratorController.java
 package com.room.decorator.controller;
 
-import com.room.decorator.model.DecoratedRoomOption;
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.model.DecorationJob;
+import com.room.decorator.model.DecorationJobResponse;
 import com.room.decorator.model.DecorationRequest;
 import com.room.decorator.model.DecorationResponse;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.RateLimitExceededException;
 import com.room.decorator.service.AIDecorationService;
+import com.room.decorator.service.DecorationJobService;
 import com.room.decorator.service.ImageAnalysisService;
+import com.room.decorator.service.RoomDecorationService;
+import com.room.decorator.storage.ImageStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Mono;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/room-decorator")
@@ -32,6 +49,21 @@ public class RoomDecoratorController {
     @Autowired
     private AIDecorationService aiDecorationService;
     
+    @Autowired
+    private RoomDecorationService roomDecorationService;
+    
+    @Autowired
+    private DecorationJobService decorationJobService;
+    
+    @Autowired
+    private ImageStore imageStore;
+    
+    @Autowired
+    private PipelineObservations observations;
+    
+    @Value("${app.decoration.stream-timeout-ms:120000}")
+    private long streamTimeoutMs;
+    
     @PostMapping(value = "/decorate", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<DecorationResponse> decorateRoom(
             @RequestParam("image") MultipartFile imageFile,
@@ -39,49 +71,30 @@ public class RoomDecoratorController {
             @RequestParam(value = "roomType", required = false) String roomType,
             @RequestParam(value = "colorPreference", required = false) String colorPreference,
             @RequestParam(value = "budgetRange", required = false) String budgetRange,
-            @RequestParam(value = "preserveExistingFurniture", defaultValue = "true") boolean preserveExistingFurniture) {
+            @RequestParam(value = "preserveExistingFurniture", defaultValue = "true") boolean preserveExistingFurniture,
+            @RequestParam(value = "reuseCachedRenders", defaultValue = "false") boolean reuseCachedRenders) {
         
         try {
             // Validate input
-            if (imageFile.isEmpty()) {
-                return ResponseEntity.badRequest()
-                    .body(new DecorationResponse(null, "", false, "No image provided"));
-            }
-            
-            if (!isValidImageType(imageFile.getContentType())) {
+            String validationError = validateImage(imageFile);
+            if (validationError != null) {
                 return ResponseEntity.badRequest()
-                    .body(new DecorationResponse(null, "", false, "Invalid image format. Please use JPG, PNG, or WEBP"));
+                    .body(new DecorationResponse(null, "", false, validationError));
             }
             
             // Create decoration request object
             DecorationRequest request = new DecorationRequest(
-                designStyle, roomType, colorPreference, budgetRange, preserveExistingFurniture
+                designStyle, roomType, colorPreference, budgetRange, preserveExistingFurniture, reuseCachedRenders
             );
             
-            // Get image bytes
-            byte[] imageBytes = imageFile.getBytes();
+            // Read the upload once; every later stage shares this buffer
+            ImageBuffer imageBytes = readUpload(imageFile);
             
-            // Analyze the room
-            logger.info("Analyzing room image for style: {}", designStyle);
-            ImageAnalysisService.RoomAnalysis roomAnalysis = imageAnalysisService.analyzeRoom(imageBytes);
-            
-            // Generate decoration options
-            logger.info("Generating decoration options...");
-            List<DecoratedRoomOption> options = aiDecorationService.generateDecorationOptions(
-                imageBytes, request, roomAnalysis
-            );
-            
-            // Create response
-            DecorationResponse response = new DecorationResponse(
-                options,
-                roomAnalysis.getAiDescription(),
-                true,
-                "Successfully generated " + options.size() + " decoration options"
-            );
-            
-            logger.info("Successfully generated {} decoration options", options.size());
-            return ResponseEntity.ok(response);
+            // Analyze the room and generate decoration options
+            return ResponseEntity.ok(roomDecorationService.decorate(imageBytes, request));
             
+        } catch (RateLimitExceededException e) {
+            return rateLimited(e);
         } catch (Exception e) {
             logger.error("Error processing decoration request", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -89,13 +102,116 @@ public class RoomDecoratorController {
         }
     }
     
+    @PostMapping(value = "/decorate-reactive", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<DecorationResponse>> decorateRoomReactive(
+            @RequestParam("image") MultipartFile imageFile,
+            @RequestParam("designStyle") String designStyle,
+            @RequestParam(value = "roomType", required = false) String roomType,
+            @RequestParam(value = "colorPreference", required = false) String colorPreference,
+            @RequestParam(value = "budgetRange", required = false) String budgetRange,
+            @RequestParam(value = "preserveExistingFurniture", defaultValue = "true") boolean preserveExistingFurniture,
+            @RequestParam(value = "reuseCachedRenders", defaultValue = "false") boolean reuseCachedRenders) {
+        
+        String validationError = validateImage(imageFile);
+        if (validationError != null) {
+            return Mono.just(ResponseEntity.badRequest()
+                .body(new DecorationResponse(null, "", false, validationError)));
+        }
+        
+        DecorationRequest request = new DecorationRequest(
+            designStyle, roomType, colorPreference, budgetRange, preserveExistingFurniture, reuseCachedRenders
+        );
+        
+        // The servlet thread is released here; outbound calls run on WebClient's event loop
+        return Mono.fromCallable(() -> readUpload(imageFile))
+            .flatMap(imageBytes -> imageAnalysisService.analyzeRoomReactive(imageBytes)
+                .flatMap(roomAnalysis -> aiDecorationService
+                    .generateDecorationOptionsReactive(imageBytes, request, roomAnalysis)
+                    .map(options -> new DecorationResponse(
+                        options,
+                        roomAnalysis.getAiDescription(),
+                        true,
+                        "Successfully generated " + options.size() + " decoration options"
+                    ))))
+            .map(ResponseEntity::ok)
+            .onErrorResume(RateLimitExceededException.class, e -> Mono.just(rateLimited(e)))
+            .onErrorResume(e -> {
+                logger.error("Error processing reactive decoration request", e);
+                return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new DecorationResponse(null, "", false, "Internal server error: " + e.getMessage())));
+            });
+    }
+    
+    @PostMapping(value = "/decorate-stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, 
+                 produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter decorateRoomStream(
+            @RequestParam("image") MultipartFile imageFile,
+            @RequestParam("designStyle") String designStyle,
+            @RequestParam(value = "roomType", required = false) String roomType,
+            @RequestParam(value = "colorPreference", required = false) String colorPreference,
+            @RequestParam(value = "budgetRange", required = false) String budgetRange,
+            @RequestParam(value = "preserveExistingFurniture", defaultValue = "true") boolean preserveExistingFurniture,
+            @RequestParam(value = "reuseCachedRenders", defaultValue = "false") boolean reuseCachedRenders) {
+        
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        
+        String validationError = validateImage(imageFile);
+        if (validationError != null) {
+            sendEvent(emitter, "error", new DecorationResponse(null, "", false, validationError));
+            emitter.complete();
+            return emitter;
+        }
+        
+        DecorationRequest request = new DecorationRequest(
+            designStyle, roomType, colorPreference, budgetRange, preserveExistingFurniture, reuseCachedRenders
+        );
+        
+        try {
+            ImageBuffer imageBytes = readUpload(imageFile);
+            
+            // Push the analysis first, then each option as soon as its generation finishes
+            imageAnalysisService.startAnalysis(imageBytes).getComplete()
+                .thenCompose(roomAnalysis -> {
+                    sendEvent(emitter, "analysis", roomAnalysis);
+                    return aiDecorationService.streamDecorationOptions(
+                        imageBytes, request, roomAnalysis, option -> sendEvent(emitter, "option", option)
+                    ).thenAccept(options -> sendEvent(emitter, "complete", new DecorationResponse(
+                        null,
+                        roomAnalysis.getAiDescription(),
+                        true,
+                        "Successfully generated " + options.size() + " decoration options"
+                    )));
+                })
+                .whenComplete((done, e) -> {
+                    RateLimitExceededException limited = RateLimitExceededException.find(e);
+                    if (limited != null) {
+                        logger.warn("Shedding streamed decoration request: {}", limited.getMessage());
+                        sendEvent(emitter, "error", new DecorationResponse(null, "", false, limited.getMessage()));
+                    } else if (e != null) {
+                        logger.error("Error streaming decoration request", e);
+                        sendEvent(emitter, "error", new DecorationResponse(null, "", false, 
+                            "Internal server error: " + e.getMessage()));
+                    }
+                    emitter.complete();
+                });
+            
+        } catch (IOException e) {
+            logger.error("Error reading uploaded image", e);
+            sendEvent(emitter, "error", new DecorationResponse(null, "", false, "Could not read uploaded image"));
+            emitter.complete();
+        }
+        
+        return emitter;
+    }
+    
     @PostMapping(value = "/decorate-json", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<DecorationResponse> decorateRoomJson(
             @Valid @RequestBody DecorationRequestWithImage request) {
         
         try {
-            // Decode base64 image
-            byte[] imageBytes = java.util.Base64.getDecoder().decode(request.getImageBase64());
+            // Decode base64 image, keeping the client's encoding for the outbound calls
+            ImageBuffer imageBytes = observations.stage("base64.decode")
+                .observe(() -> ImageBuffer.fromBase64(request.getImageBase64()));
             
             // Create decoration request
             DecorationRequest decorationRequest = new DecorationRequest(
@@ -103,31 +219,101 @@ public class RoomDecoratorController {
                 request.getRoomType(),
                 request.getColorPreference(),
                 request.getBudgetRange(),
-                request.isPreserveExistingFurniture()
+                request.isPreserveExistingFurniture(),
+                request.isReuseCachedRenders()
             );
             
-            // Analyze the room
-            ImageAnalysisService.RoomAnalysis roomAnalysis = imageAnalysisService.analyzeRoom(imageBytes);
-            
-            // Generate decoration options
-            List<DecoratedRoomOption> options = aiDecorationService.generateDecorationOptions(
-                imageBytes, decorationRequest, roomAnalysis
-            );
+            // Analyze the room and generate decoration options
+            return ResponseEntity.ok(roomDecorationService.decorate(imageBytes, decorationRequest));
             
-            // Create response
-            DecorationResponse response = new DecorationResponse(
-                options,
-                roomAnalysis.getAiDescription(),
-                true,
-                "Successfully generated " + options.size() + " decoration options"
+        } catch (RateLimitExceededException e) {
+            return rateLimited(e);
+        } catch (Exception e) {
+            logger.error("Error processing JSON decoration request", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new DecorationResponse(null, "", false, "Error processing request: " + e.getMessage()));
+        }
+    }
+    
+    @PostMapping(value = "/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<DecorationJobResponse> submitDecorationJob(
+            @RequestParam("image") MultipartFile imageFile,
+            @RequestParam("designStyle") String designStyle,
+            @RequestParam(value = "roomType", required = false) String roomType,
+            @RequestParam(value = "colorPreference", required = false) String colorPreference,
+            @RequestParam(value = "budgetRange", required = false) String budgetRange,
+            @RequestParam(value = "preserveExistingFurniture", defaultValue = "true") boolean preserveExistingFurniture,
+            @RequestParam(value = "reuseCachedRenders", defaultValue = "false") boolean reuseCachedRenders) {
+        
+        String validationError = validateImage(imageFile);
+        if (validationError != null) {
+            return ResponseEntity.badRequest()
+                .body(new DecorationJobResponse(null, null, null, null, null, validationError));
+        }
+        
+        try {
+            DecorationRequest request = new DecorationRequest(
+                designStyle, roomType, colorPreference, budgetRange, preserveExistingFurniture, reuseCachedRenders
             );
             
-            return ResponseEntity.ok(response);
+            DecorationJob job = decorationJobService.submit(readUpload(imageFile), request);
+            return ResponseEntity.accepted()
+                .location(URI.create("/api/room-decorator/jobs/" + job.getId()))
+                .body(new DecorationJobResponse(job.getId(), job.getStatus(), job.getCreatedAt(), 
+                                                job.getUpdatedAt(), null, "Job queued"));
             
         } catch (Exception e) {
-            logger.error("Error processing JSON decoration request", e);
+            logger.error("Error submitting decoration job", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(new DecorationResponse(null, "", false, "Error processing request: " + e.getMessage()));
+                .body(new DecorationJobResponse(null, null, null, null, null, 
+                                                "Internal server error: " + e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<DecorationJobResponse> getDecorationJob(@PathVariable String jobId) {
+        return decorationJobService.findJob(jobId)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new DecorationJobResponse(jobId, null, null, null, null, "Job not found")));
+    }
+    
+    @GetMapping("/images/{imageId:.+}")
+    public void getImage(@PathVariable String imageId, 
+                         HttpServletRequest request, 
+                         HttpServletResponse response) throws IOException {
+        
+        Optional<ImageStore.StoredImage> stored = imageStore.find(imageId);
+        if (stored.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        
+        // Image ids are content hashes, so a stored image never changes and can be cached forever
+        String etag = "\"" + imageId + "\"";
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        
+        ImageStore.StoredImage image = stored.get();
+        response.setContentType(image.getContentType());
+        response.setContentLengthLong(image.getSize());
+        
+        // Let Tomcat hand the file straight to the socket with sendfile when it can
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support")) 
+                && image.getResource().isFile()) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", 
+                                 image.getResource().getFile().getAbsolutePath());
+            request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+            request.setAttribute("org.apache.tomcat.sendfile.end", image.getSize());
+            return;
+        }
+        
+        try (InputStream in = image.getResource().getInputStream()) {
+            in.transferTo(response.getOutputStream());
         }
     }
     
@@ -144,6 +330,39 @@ public class RoomDecoratorController {
         return ResponseEntity.ok("Room Decorator API is running");
     }
     
+    private ResponseEntity<DecorationResponse> rateLimited(RateLimitExceededException e) {
+        // Out of provider quota: tell the client when to come back instead of returning placeholder images
+        logger.warn("Shedding decoration request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(new DecorationResponse(null, "", false, e.getMessage()));
+    }
+    
+    private ImageBuffer readUpload(MultipartFile imageFile) throws IOException {
+        return observations.stage("multipart.read").observeChecked(() -> ImageBuffer.fromMultipart(imageFile));
+    }
+    
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; generation carries on but there is nobody left to tell
+            logger.debug("Could not send '{}' event: {}", name, e.getMessage());
+        }
+    }
+    
+    private String validateImage(MultipartFile imageFile) {
+        if (imageFile.isEmpty()) {
+            return "No image provided";
+        }
+        
+        if (!isValidImageType(imageFile.getContentType())) {
+            return "Invalid image format. Please use JPG, PNG, or WEBP";
+        }
+        
+        return null;
+    }
+    
     private boolean isValidImageType(String contentType) {
         return contentType != null && (
             contentType.equals("image/jpeg") ||
@@ -161,6 +380,7 @@ public class RoomDecoratorController {
         private String colorPreference;
         private String budgetRange;
         private boolean preserveExistingFurniture = true;
+        private boolean reuseCachedRenders;
         
         // Constructors
         public DecorationRequestWithImage() {}
@@ -185,5 +405,8 @@ public class RoomDecoratorController {
         public void setPreserveExistingFurniture(boolean preserveExistingFurniture) { 
             this.preserveExistingFurniture = preserveExistingFurniture; 
         }
+        
+        public boolean isReuseCachedRenders() { return reuseCachedRenders; }
+        public void setReuseCachedRenders(boolean reuseCachedRenders) { this.reuseCachedRenders = reuseCachedRenders; }
     }
 }
\ No newline at end of file
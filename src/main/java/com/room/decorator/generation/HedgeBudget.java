@@ -0,0 +1,28 @@
+package com.room.decorator.generation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Caps how many duplicate (hedge) generations one decoration request may fire across its variations
+public class HedgeBudget {
+    
+    private final AtomicInteger remaining;
+    
+    public HedgeBudget(int maxHedges) {
+        this.remaining = new AtomicInteger(maxHedges);
+    }
+    
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = remaining.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!remaining.compareAndSet(current, current - 1));
+        return true;
+    }
+    
+    public int getRemaining() {
+        return remaining.get();
+    }
+}
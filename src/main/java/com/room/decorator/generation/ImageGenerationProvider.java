@@ -0,0 +1,55 @@
+package com.room.decorator.generation;
+
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.ratelimit.ProviderRateLimiter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+// One backend that turns a room photo and a decoration prompt into a generated image
+public interface ImageGenerationProvider {
+    
+    // Stable short name, used in configuration, metrics and logs
+    String getName();
+    
+    // False when the provider is missing credentials and should not be routed to
+    boolean isConfigured();
+    
+    // Blocking generation; throws when the provider fails, so the router can record it and fail over
+    byte[] generate(ImageBuffer originalImage, String prompt) throws Exception;
+    
+    default Mono<byte[]> generateReactive(ImageBuffer originalImage, String prompt) {
+        return Mono.fromCallable(() -> generate(originalImage, prompt))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    // Several samples for the same prompt in one call; the router never asks for more than maxSamplesPerCall()
+    default Mono<List<byte[]>> generateBatchReactive(ImageBuffer originalImage, String prompt, int count) {
+        return Flux.range(0, count)
+            .flatMap(sample -> generateReactive(originalImage, prompt))
+            .collectList();
+    }
+    
+    // Most samples one call can return; larger batches are sent by the router as several calls
+    default int maxSamplesPerCall() {
+        return 1;
+    }
+    
+    // Client-side quota for the provider's API key, taken by the router before the circuit breaker and bulkhead;
+    // null when the provider has none
+    default ProviderRateLimiter rateLimiter() {
+        return null;
+    }
+    
+    // Token-bucket cost of one call returning the given number of samples
+    default long rateLimitCost(int samples) {
+        return 0;
+    }
+    
+    static boolean hasApiKey(String apiKey) {
+        // The shipped properties use "your-...-here" placeholders when no key is set in the environment
+        return apiKey != null && !apiKey.isBlank() && !apiKey.startsWith("your-");
+    }
+}
@@ -0,0 +1,451 @@
+package com.room.decorator.generation;
+
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.ProviderRateLimiter;
+import com.room.decorator.ratelimit.RateLimitExceededException;
+import com.room.decorator.resilience.ProviderGuardRegistry;
+import com.room.decorator.resilience.ProviderUnavailableException;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Picks an image generation provider per call from rolling latency and error statistics,
+// failing over to the next candidate when the chosen one errors. Providers with an open circuit are skipped.
+@Component
+public class ImageGenerationRouter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ImageGenerationRouter.class);
+    
+    // Below this many samples a provider is preferred, so new or recovered providers get measured
+    private static final int MIN_SAMPLES = 5;
+    // A provider that always fails ranks as if it took this long
+    private static final long ERROR_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(60);
+    // Carries the caller's observation onto the thread that runs a blocking call
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+    
+    // Candidate providers in preference order; unconfigured ones are skipped
+    @Value("${app.generation.providers:dalle,stability}")
+    private List<String> providerNames;
+    
+    // latency: fastest first | weighted: random, weighted by speed | ordered: configured order
+    @Value("${app.generation.routing:latency}")
+    private String routing;
+    
+    @Value("${app.generation.stats-window:100}")
+    private int statsWindow;
+    
+    // Share of calls sent to a non-preferred provider to keep its statistics current
+    @Value("${app.generation.exploration-ratio:0.05}")
+    private double explorationRatio;
+    
+    // Per-call deadline, blocking calls included; a timed-out call counts as a failure and the next provider is tried
+    @Value("${app.generation.timeout-ms:90000}")
+    private long timeoutMs;
+    
+    @Value("${app.generation.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+    
+    // Extra generations one decoration request may fire, shared by all its variations
+    @Value("${app.generation.hedging.max-hedges-per-request:1}")
+    private int maxHedgesPerRequest;
+    
+    // Hedge after the primary provider's observed p95; this delay applies until enough samples exist
+    @Value("${app.generation.hedging.percentile:95}")
+    private double hedgePercentile;
+    
+    @Value("${app.generation.hedging.default-delay-ms:20000}")
+    private long defaultHedgeDelayMs;
+    
+    @Value("${app.generation.hedging.min-delay-ms:1000}")
+    private long minHedgeDelayMs;
+    
+    // alternate: hedge to the next-best provider when there is one | same: duplicate on the same provider
+    @Value("${app.generation.hedging.target:alternate}")
+    private String hedgeTarget;
+    
+    // Concurrent calls for the same image, prompt and sample count share one provider call
+    @Value("${app.generation.coalescing.enabled:true}")
+    private boolean coalescingEnabled;
+    
+    @Autowired
+    private List<ImageGenerationProvider> availableProviders;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ProviderGuardRegistry guards;
+    
+    @Autowired
+    private PipelineObservations observations;
+    
+    private final List<ImageGenerationProvider> providers = new ArrayList<>();
+    private final Map<String, ProviderStats> stats = new HashMap<>();
+    
+    private SingleFlight<String, byte[]> imageFlights;
+    private SingleFlight<String, List<byte[]>> batchFlights;
+    
+    @PostConstruct
+    public void init() {
+        Counter coalesced = Counter.builder("image.generation.coalesced")
+            .description("Image generation calls served by an identical call already in flight")
+            .register(meterRegistry);
+        imageFlights = new SingleFlight<>(coalesced::increment);
+        batchFlights = new SingleFlight<>(coalesced::increment);
+        
+        Map<String, ImageGenerationProvider> byName = new HashMap<>();
+        for (ImageGenerationProvider provider : availableProviders) {
+            byName.put(provider.getName(), provider);
+        }
+        
+        for (String name : providerNames) {
+            ImageGenerationProvider provider = byName.get(name.trim());
+            if (provider == null) {
+                logger.warn("Unknown image generation provider '{}' in configuration", name);
+            } else if (!provider.isConfigured()) {
+                logger.warn("Image generation provider '{}' has no credentials, not routing to it", name);
+            } else {
+                providers.add(provider);
+                stats.put(provider.getName(), new ProviderStats(statsWindow));
+            }
+        }
+        logger.info("Image generation providers: {} (routing: {})", 
+                    providers.stream().map(ImageGenerationProvider::getName).toList(), routing);
+    }
+    
+    // True while every configured provider's circuit is open, so generation would be rejected outright
+    public boolean isUnavailable() {
+        for (ImageGenerationProvider provider : providers) {
+            if (guards.forProvider(provider.getName()).isCallPermitted()) {
+                return false;
+            }
+        }
+        return !providers.isEmpty();
+    }
+    
+    // Providers to try for the next call, best candidate first
+    public List<ImageGenerationProvider> route() {
+        List<ImageGenerationProvider> candidates = new ArrayList<>();
+        for (ImageGenerationProvider provider : providers) {
+            if (guards.forProvider(provider.getName()).isCallPermitted()) {
+                candidates.add(provider);
+            }
+        }
+        if (candidates.size() < 2 || "ordered".equalsIgnoreCase(routing)) {
+            return candidates;
+        }
+        
+        Map<ImageGenerationProvider, Long> scores = new HashMap<>();
+        for (ImageGenerationProvider provider : candidates) {
+            scores.put(provider, score(provider));
+        }
+        candidates.sort(Comparator.comparingLong(scores::get));
+        
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if ("weighted".equalsIgnoreCase(routing)) {
+            // Lead with a provider drawn with probability proportional to its speed
+            double total = 0;
+            for (ImageGenerationProvider provider : candidates) {
+                total += 1.0 / Math.max(scores.get(provider), 1);
+            }
+            double pick = random.nextDouble() * total;
+            for (int i = 0; i < candidates.size(); i++) {
+                pick -= 1.0 / Math.max(scores.get(candidates.get(i)), 1);
+                if (pick <= 0) {
+                    candidates.add(0, candidates.remove(i));
+                    break;
+                }
+            }
+        } else if (random.nextDouble() < explorationRatio) {
+            candidates.add(0, candidates.remove(1 + random.nextInt(candidates.size() - 1)));
+        }
+        return candidates;
+    }
+    
+    public HedgeBudget newHedgeBudget() {
+        return new HedgeBudget(hedgingEnabled ? maxHedgesPerRequest : 0);
+    }
+    
+    public byte[] generate(ImageBuffer originalImage, String prompt, HedgeBudget hedgeBudget) throws Exception {
+        if (hedgingEnabled && hedgeBudget != null) {
+            // Only the reactive calls can be cancelled in flight, so hedged generation always goes through them
+            return generateReactive(originalImage, prompt, hedgeBudget).block();
+        }
+        
+        if (coalescingEnabled) {
+            return imageFlights.execute(flightKey(originalImage, prompt, 1), () -> generateWithFailover(originalImage, prompt));
+        }
+        return generateWithFailover(originalImage, prompt);
+    }
+    
+    private byte[] generateWithFailover(ImageBuffer originalImage, String prompt) throws Exception {
+        Exception lastError = noProviderAvailable();
+        RateLimitExceededException shed = null;
+        
+        for (ImageGenerationProvider provider : route()) {
+            try {
+                return generateWith(provider, originalImage, prompt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            } catch (Exception e) {
+                logger.warn("Image generation provider '{}' failed, trying the next one", provider.getName(), e);
+                lastError = e;
+                shed = soonerShed(shed, e);
+            }
+        }
+        throw shed != null ? shed : lastError;
+    }
+    
+    public Mono<byte[]> generateReactive(ImageBuffer originalImage, String prompt, HedgeBudget hedgeBudget) {
+        List<ImageGenerationProvider> candidates = route();
+        if (candidates.isEmpty()) {
+            return Mono.error(noProviderAvailable());
+        }
+        
+        Supplier<Mono<byte[]>> call = () -> Mono.defer(() -> {
+            // Failover skips providers this request already called, whether as the primary or as the hedge
+            Set<ImageGenerationProvider> tried = ConcurrentHashMap.newKeySet();
+            AtomicReference<RateLimitExceededException> shed = new AtomicReference<>();
+            Mono<byte[]> result = generateHedged(candidates, originalImage, prompt, hedgeBudget, tried);
+            for (ImageGenerationProvider next : candidates.subList(1, candidates.size())) {
+                result = result.onErrorResume(e -> {
+                    if (!tried.add(next)) {
+                        return Mono.error(e);
+                    }
+                    logger.warn("Image generation failed, failing over to provider '{}'", next.getName(), e);
+                    shed.set(soonerShed(shed.get(), e));
+                    return generateWithReactive(next, originalImage, prompt);
+                });
+            }
+            return result.onErrorMap(e -> shedOr(shed.get(), e));
+        });
+        return coalescingEnabled ? imageFlights.executeReactive(flightKey(originalImage, prompt, 1), call) : call.get();
+    }
+    
+    // Several samples of one prompt, from as few provider calls as the chosen provider allows
+    public Mono<List<byte[]>> generateBatchReactive(ImageBuffer originalImage, String prompt, int count) {
+        List<ImageGenerationProvider> candidates = route();
+        if (candidates.isEmpty()) {
+            return Mono.error(noProviderAvailable());
+        }
+        
+        Supplier<Mono<List<byte[]>>> call = () -> Mono.defer(() -> {
+            AtomicReference<RateLimitExceededException> shed = new AtomicReference<>();
+            Mono<List<byte[]>> result = generateBatchWithReactive(candidates.get(0), originalImage, prompt, count);
+            for (int i = 1; i < candidates.size(); i++) {
+                ImageGenerationProvider failed = candidates.get(i - 1);
+                ImageGenerationProvider next = candidates.get(i);
+                result = result.onErrorResume(e -> {
+                    logger.warn("Image generation provider '{}' failed, trying the next one", failed.getName(), e);
+                    shed.set(soonerShed(shed.get(), e));
+                    return generateBatchWithReactive(next, originalImage, prompt, count);
+                });
+            }
+            return result.onErrorMap(e -> shedOr(shed.get(), e));
+        });
+        return coalescingEnabled ? batchFlights.executeReactive(flightKey(originalImage, prompt, count), call) : call.get();
+    }
+    
+    private Mono<byte[]> generateHedged(List<ImageGenerationProvider> candidates, ImageBuffer originalImage, 
+                                        String prompt, HedgeBudget hedgeBudget, Set<ImageGenerationProvider> tried) {
+        ImageGenerationProvider primary = candidates.get(0);
+        tried.add(primary);
+        if (!hedgingEnabled || hedgeBudget == null) {
+            return generateWithReactive(primary, originalImage, prompt);
+        }
+        
+        ImageGenerationProvider secondary = "same".equalsIgnoreCase(hedgeTarget) || candidates.size() < 2 
+            ? primary : candidates.get(1);
+        Duration delay = hedgeDelay(primary);
+        
+        // A primary that fails outright goes to failover instead of waiting out the hedge delay
+        Sinks.One<Boolean> primaryFailed = Sinks.one();
+        Mono<byte[]> first = generateWithReactive(primary, originalImage, prompt)
+            .doOnError(e -> primaryFailed.tryEmitValue(Boolean.TRUE));
+        
+        Mono<byte[]> hedge = Mono.delay(delay)
+            .takeUntilOther(primaryFailed.asMono())
+            .filter(tick -> hedgeBudget.tryAcquire())
+            .flatMap(tick -> {
+                logger.info("Image generation on '{}' still running after {} ms, hedging to '{}'", 
+                            primary.getName(), delay.toMillis(), secondary.getName());
+                hedgeCounter(secondary, "fired").increment();
+                tried.add(secondary);
+                return generateWithReactive(secondary, originalImage, prompt)
+                    .doOnNext(image -> hedgeCounter(secondary, "won").increment());
+            });
+        
+        // Whichever emits first wins and the other subscription is cancelled, aborting its HTTP exchange
+        return Mono.firstWithValue(first, hedge);
+    }
+    
+    private Duration hedgeDelay(ImageGenerationProvider provider) {
+        ProviderStats providerStats = stats.get(provider.getName());
+        long delayMs = providerStats.getSampleCount() < MIN_SAMPLES 
+            ? defaultHedgeDelayMs 
+            : TimeUnit.NANOSECONDS.toMillis(providerStats.percentileNanos(hedgePercentile));
+        return Duration.ofMillis(Math.max(delayMs, minHedgeDelayMs));
+    }
+    
+    // Calls one provider directly, still recording its latency and outcome; a call rejected by its guard records neither.
+    // The rate-limit permit is taken before the guard, so waiting for quota neither holds a bulkhead slot nor
+    // counts as a slow call against the provider's circuit.
+    public byte[] generateWith(ImageGenerationProvider provider, ImageBuffer originalImage, String prompt) throws Exception {
+        return observations.stage("generation.call").provider(provider.getName()).observeChecked(() -> 
+            limited(provider, 1, () -> guards.forProvider(provider.getName()).call(() -> {
+                long start = System.nanoTime();
+                try {
+                    byte[] image = withTimeout(() -> provider.generate(originalImage, prompt));
+                    recordSuccess(provider, System.nanoTime() - start);
+                    return image;
+                } catch (Exception e) {
+                    recordFailure(provider, System.nanoTime() - start);
+                    throw e;
+                }
+            })));
+    }
+    
+    public Mono<byte[]> generateWithReactive(ImageGenerationProvider provider, ImageBuffer originalImage, String prompt) {
+        return timed(provider, 1, () -> provider.generateReactive(originalImage, prompt));
+    }
+    
+    public Mono<List<byte[]>> generateBatchWithReactive(ImageGenerationProvider provider, ImageBuffer originalImage, 
+                                                        String prompt, int count) {
+        if (count > provider.maxSamplesPerCall()) {
+            // One call per sample, each with its own permit and guard slot
+            return Flux.range(0, count)
+                .flatMapSequential(sample -> generateWithReactive(provider, originalImage, prompt))
+                .collectList();
+        }
+        return timed(provider, count, () -> provider.generateBatchReactive(originalImage, prompt, count));
+    }
+    
+    private <T> Mono<T> timed(ImageGenerationProvider provider, int samples, Supplier<Mono<T>> call) {
+        // The timeout sits inside the guard so a provider that stops answering trips its circuit
+        Supplier<Mono<T>> guarded = () -> guards.forProvider(provider.getName()).callReactive(() -> Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.get()
+                .timeout(Duration.ofMillis(timeoutMs))
+                .doOnSuccess(result -> recordSuccess(provider, System.nanoTime() - start))
+                .doOnError(e -> recordFailure(provider, System.nanoTime() - start))
+                // A hedge loser is cancelled, which is neither a success nor a failure
+                .doOnCancel(() -> timer(provider, "cancelled").record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }));
+        return observations.stage("generation.call").provider(provider.getName())
+            .observeReactive(() -> limitedReactive(provider, samples, guarded));
+    }
+    
+    private static <T> T limited(ImageGenerationProvider provider, int samples, Callable<T> call) throws Exception {
+        ProviderRateLimiter limiter = provider.rateLimiter();
+        return limiter != null ? limiter.call(provider.rateLimitCost(samples), call) : call.call();
+    }
+    
+    private static <T> Mono<T> limitedReactive(ImageGenerationProvider provider, int samples, Supplier<Mono<T>> call) {
+        ProviderRateLimiter limiter = provider.rateLimiter();
+        return limiter != null ? limiter.callReactive(provider.rateLimitCost(samples), call) : Mono.defer(call);
+    }
+    
+    // The blocking call runs on its own thread so the caller stops waiting at the deadline, as on the reactive path.
+    // The abandoned thread is interrupted; an HTTP read it is stuck in still ends at the client's read timeout.
+    private <T> T withTimeout(Callable<T> call) throws Exception {
+        try {
+            return Mono.fromCallable(CONTEXT_SNAPSHOTS.captureAll().wrap(call))
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(Duration.ofMillis(timeoutMs))
+                .block();
+        } catch (RuntimeException e) {
+            // block() wraps checked exceptions, the TimeoutException included
+            Throwable cause = Exceptions.unwrap(e);
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+    
+    public ProviderStats getStats(String providerName) {
+        return stats.get(providerName);
+    }
+    
+    private Exception noProviderAvailable() {
+        return providers.isEmpty() 
+            ? new IllegalStateException("No image generation provider configured")
+            : new ProviderUnavailableException("image generation", "every provider's circuit is open");
+    }
+    
+    // A provider out of quota can still serve the request later, unlike one that failed, so once every candidate
+    // has failed a shed on any of them is reported, with the soonest retry
+    private static RateLimitExceededException soonerShed(RateLimitExceededException current, Throwable error) {
+        RateLimitExceededException shed = RateLimitExceededException.find(error);
+        if (shed == null) {
+            return current;
+        }
+        return current == null || shed.getRetryAfterMs() < current.getRetryAfterMs() ? shed : current;
+    }
+    
+    private static Throwable shedOr(RateLimitExceededException shed, Throwable lastError) {
+        RateLimitExceededException soonest = soonerShed(shed, lastError);
+        return soonest != null ? soonest : lastError;
+    }
+    
+    private static String flightKey(ImageBuffer originalImage, String prompt, int count) {
+        return originalImage.sha256() + '|' + count + '|' + prompt;
+    }
+    
+    private long score(ImageGenerationProvider provider) {
+        ProviderStats providerStats = stats.get(provider.getName());
+        long typicalLatency = providerStats.getSampleCount() < MIN_SAMPLES ? 0 : providerStats.percentileNanos(50);
+        return typicalLatency + (long) (providerStats.getErrorRate() * ERROR_PENALTY_NANOS);
+    }
+    
+    private void recordSuccess(ImageGenerationProvider provider, long latencyNanos) {
+        stats.get(provider.getName()).recordSuccess(latencyNanos);
+        timer(provider, "success").record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private void recordFailure(ImageGenerationProvider provider, long latencyNanos) {
+        stats.get(provider.getName()).recordFailure();
+        timer(provider, "failure").record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private Counter hedgeCounter(ImageGenerationProvider provider, String outcome) {
+        return Counter.builder("image.generation.hedges")
+            .description("Hedged image generations fired and won, per hedge provider")
+            .tag("provider", provider.getName())
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+    
+    private Timer timer(ImageGenerationProvider provider, String outcome) {
+        return Timer.builder("image.generation")
+            .description("Image generation calls per provider")
+            .tag("provider", provider.getName())
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,54 @@
+package com.room.decorator.generation;
+
+import com.room.decorator.image.ImageBuffer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Offline provider for development and load tests: echoes the uploaded photo back after an optional delay
+@Component
+public class LocalStubImageProvider implements ImageGenerationProvider {
+    
+    @Value("${app.generation.stub.delay-ms:0}")
+    private long delayMs;
+    
+    @Override
+    public String getName() {
+        return "local-stub";
+    }
+    
+    @Override
+    public boolean isConfigured() {
+        return true;
+    }
+    
+    @Override
+    public byte[] generate(ImageBuffer originalImage, String prompt) throws InterruptedException {
+        if (delayMs > 0) {
+            TimeUnit.MILLISECONDS.sleep(delayMs);
+        }
+        return originalImage.bytes();
+    }
+    
+    @Override
+    public Mono<byte[]> generateReactive(ImageBuffer originalImage, String prompt) {
+        return Mono.delay(Duration.ofMillis(delayMs))
+            .map(tick -> originalImage.bytes());
+    }
+    
+    @Override
+    public int maxSamplesPerCall() {
+        return Integer.MAX_VALUE;
+    }
+    
+    @Override
+    public Mono<List<byte[]>> generateBatchReactive(ImageBuffer originalImage, String prompt, int count) {
+        return Mono.delay(Duration.ofMillis(delayMs))
+            .map(tick -> Collections.nCopies(count, originalImage.bytes()));
+    }
+}
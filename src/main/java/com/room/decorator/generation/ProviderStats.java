@@ -0,0 +1,53 @@
+package com.room.decorator.generation;
+
+import java.util.Arrays;
+
+// Rolling latency window and smoothed error rate for one provider, the inputs to routing decisions
+public class ProviderStats {
+    
+    // Weight of the newest outcome in the error rate, roughly the last 20 calls
+    private static final double ERROR_DECAY = 0.1;
+    
+    private final long[] latencies;
+    private int next;
+    private int count;
+    private double errorRate;
+    
+    public ProviderStats(int windowSize) {
+        this.latencies = new long[windowSize];
+    }
+    
+    public synchronized void recordSuccess(long latencyNanos) {
+        latencies[next] = latencyNanos;
+        next = (next + 1) % latencies.length;
+        count = Math.min(count + 1, latencies.length);
+        errorRate = (1 - ERROR_DECAY) * errorRate;
+    }
+    
+    // Failure latency is not recorded, so a provider that fails fast does not start to look fast
+    public synchronized void recordFailure() {
+        errorRate = (1 - ERROR_DECAY) * errorRate + ERROR_DECAY;
+    }
+    
+    public synchronized int getSampleCount() {
+        return count;
+    }
+    
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+    
+    // Latency at the given percentile (0-100) of the window, or -1 without samples
+    public long percentileNanos(double percentile) {
+        long[] window;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            window = Arrays.copyOf(latencies, count);
+        }
+        Arrays.sort(window);
+        int index = (int) Math.ceil(percentile / 100.0 * window.length) - 1;
+        return window[Math.max(0, Math.min(index, window.length - 1))];
+    }
+}
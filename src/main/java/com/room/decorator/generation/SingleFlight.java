@@ -0,0 +1,136 @@
+package com.room.decorator.generation;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Coalesces concurrent identical calls: the first caller for a key runs it, later callers with the same key
+// wait for and share that result instead of starting their own
+public class SingleFlight<K, V> {
+    
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final Runnable onCoalesced;
+    
+    public SingleFlight(Runnable onCoalesced) {
+        this.onCoalesced = onCoalesced;
+    }
+    
+    public V execute(K key, Callable<V> call) throws Exception {
+        while (true) {
+            Flight<V> flight = new Flight<>();
+            Flight<V> existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                // A blocking caller cannot go away, so its flight is never cancelled
+                flight.join();
+                return runBlocking(key, flight, call);
+            }
+            if (existing.join()) {
+                onCoalesced.run();
+                try {
+                    return existing.result.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            // The existing flight was just abandoned by its last caller; replace it
+            inFlight.remove(key, existing);
+        }
+    }
+    
+    private V runBlocking(K key, Flight<V> flight, Callable<V> call) throws Exception {
+        try {
+            V value = call.call();
+            flight.result.complete(value);
+            return value;
+        } catch (Exception e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+    
+    public Mono<V> executeReactive(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            while (true) {
+                Flight<V> flight = new Flight<>();
+                Flight<V> existing = inFlight.putIfAbsent(key, flight);
+                if (existing == null) {
+                    flight.join();
+                    flight.start(call.get(), () -> inFlight.remove(key, flight));
+                    return flight.follow();
+                }
+                if (existing.join()) {
+                    onCoalesced.run();
+                    return existing.follow();
+                }
+                inFlight.remove(key, existing);
+            }
+        });
+    }
+    
+    public int size() {
+        return inFlight.size();
+    }
+    
+    // One shared call and the number of callers still waiting for it. The call is subscribed once, detached from
+    // any single caller, so the first caller leaving does not cancel it for the others; it is cancelled only when
+    // every caller has gone.
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        // Callers still interested; -1 once the last one left and the call was cancelled
+        private final AtomicInteger callers = new AtomicInteger();
+        private volatile CompletableFuture<V> upstream;
+        
+        boolean join() {
+            while (true) {
+                int current = callers.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (callers.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+        
+        void start(Mono<V> call, Runnable onDone) {
+            // An empty call completes with null, which each caller sees as an empty Mono
+            CompletableFuture<V> subscribed = call.toFuture();
+            upstream = subscribed;
+            subscribed.whenComplete((value, error) -> {
+                if (subscribed.isCancelled()) {
+                    // Every caller has already gone, so there is nobody left to hand the cancellation to
+                    onDone.run();
+                    return;
+                }
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+                onDone.run();
+            });
+        }
+        
+        Mono<V> follow() {
+            // Cancelling one caller's Mono must not cancel the shared future
+            return Mono.fromFuture(result, true).doOnCancel(this::leave);
+        }
+        
+        private void leave() {
+            if (callers.decrementAndGet() == 0 && callers.compareAndSet(0, -1)) {
+                CompletableFuture<V> subscribed = upstream;
+                if (subscribed != null) {
+                    // Cancels the subscription, aborting the provider call nobody is waiting for any more
+                    subscribed.cancel(true);
+                }
+            }
+        }
+    }
+}
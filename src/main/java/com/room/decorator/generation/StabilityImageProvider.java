@@ -0,0 +1,158 @@
+package com.room.decorator.generation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.ProviderRateLimiter;
+import com.room.decorator.ratelimit.RateLimiterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stable Diffusion XL image-to-image, which starts from the uploaded photo itself
+@Component
+public class StabilityImageProvider implements ImageGenerationProvider {
+    
+    private static final String STABILITY_API_URL = 
+        "https://api.stability.ai/v1/generation/stable-diffusion-xl-1024-v1-0/image-to-image";
+    
+    private static final int MAX_SAMPLES = 10;
+    
+    @Value("${stability.api.key:}")
+    private String stabilityApiKey;
+    
+    @Autowired
+    private RestTemplate restTemplate;
+    
+    @Autowired
+    private WebClient webClient;
+    
+    @Autowired
+    private RateLimiterRegistry rateLimiters;
+    
+    @Autowired
+    private PipelineObservations observations;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Override
+    public String getName() {
+        return "stability";
+    }
+    
+    @Override
+    public boolean isConfigured() {
+        return ImageGenerationProvider.hasApiKey(stabilityApiKey);
+    }
+    
+    @Override
+    public int maxSamplesPerCall() {
+        return MAX_SAMPLES;
+    }
+    
+    @Override
+    public ProviderRateLimiter rateLimiter() {
+        return rateLimiters.forProvider(getName(), stabilityApiKey);
+    }
+    
+    // Stability bills per generated image, so the token bucket counts samples
+    @Override
+    public long rateLimitCost(int samples) {
+        return samples;
+    }
+    
+    @Override
+    public byte[] generate(ImageBuffer originalImage, String prompt) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Authorization", "Bearer " + stabilityApiKey);
+        
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(buildStabilityRequest(originalImage, prompt), headers);
+        
+        String response = restTemplate.postForObject(
+            STABILITY_API_URL,
+            entity,
+            String.class
+        );
+        
+        return parseStabilityImage(response);
+    }
+    
+    @Override
+    public Mono<byte[]> generateReactive(ImageBuffer originalImage, String prompt) {
+        return generateBatchReactive(originalImage, prompt, 1).map(images -> images.get(0));
+    }
+    
+    // One call returns every sample, so the upload and the queueing on Stability's side are paid once
+    @Override
+    public Mono<List<byte[]>> generateBatchReactive(ImageBuffer originalImage, String prompt, int count) {
+        return webClient.post()
+            .uri(STABILITY_API_URL)
+            .header("Authorization", "Bearer " + stabilityApiKey)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(buildStabilityRequest(originalImage, prompt, count))
+            .retrieve()
+            .bodyToMono(String.class)
+            .map(this::parseStabilityImages);
+    }
+    
+    private Map<String, Object> buildStabilityRequest(ImageBuffer originalImage, String prompt) {
+        return buildStabilityRequest(originalImage, prompt, 1);
+    }
+    
+    private Map<String, Object> buildStabilityRequest(ImageBuffer originalImage, String prompt, int samples) {
+        Map<String, Object> requestBody = new HashMap<>();
+        // Encoded once per request and written into the JSON body without an intermediate String
+        requestBody.put("init_image", observations.stage("base64.encode").provider(getName()).observe(originalImage::base64));
+        requestBody.put("init_image_mode", "IMAGE_STRENGTH");
+        requestBody.put("image_strength", 0.35);
+        requestBody.put("steps", 40);
+        requestBody.put("seed", 0);
+        requestBody.put("cfg_scale", 7);
+        requestBody.put("samples", samples);
+        
+        Map<String, Object> textPrompt = new HashMap<>();
+        textPrompt.put("text", prompt);
+        textPrompt.put("weight", 1);
+        requestBody.put("text_prompts", Arrays.asList(textPrompt));
+        
+        return requestBody;
+    }
+    
+    private byte[] parseStabilityImage(String response) {
+        return parseStabilityImages(response).get(0);
+    }
+    
+    private List<byte[]> parseStabilityImages(String response) {
+        List<byte[]> images = new ArrayList<>();
+        try {
+            JsonNode artifacts = objectMapper.readTree(response).path("artifacts");
+            observations.stage("base64.decode").provider(getName()).observe(() -> {
+                for (JsonNode artifact : artifacts) {
+                    images.add(Base64.getDecoder().decode(artifact.path("base64").asText()));
+                }
+                return images;
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable Stability API response", e);
+        }
+        if (images.isEmpty()) {
+            throw new IllegalStateException("Stability API response contained no images");
+        }
+        return images;
+    }
+}
@@ -0,0 +1,167 @@
+package com.room.decorator.image;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Colour and lighting statistics gathered in a single pass over a downsampled copy of the image
+public final class ColorStatistics {
+    
+    private static final int LUMINANCE_BINS = 16;
+    // 3 bits per channel gives a 512 colour palette, coarse enough for pixels to pile up in real colours
+    private static final int PALETTE_BITS = 3;
+    private static final int PALETTE_SIZE = 1 << (PALETTE_BITS * 3);
+    private static final int DOMINANT_COLORS = 3;
+    // Minimum red/blue difference before a pixel counts as warm or cool rather than neutral
+    private static final int TONE_MARGIN = 16;
+    
+    private final double meanBlue;
+    private final double meanGreen;
+    private final double meanRed;
+    private final int[] luminanceHistogram;
+    private final List<String> dominantColors;
+    private final double warmRatio;
+    private final double coolRatio;
+    
+    private ColorStatistics(double meanBlue, double meanGreen, double meanRed, int[] luminanceHistogram,
+                            List<String> dominantColors, double warmRatio, double coolRatio) {
+        this.meanBlue = meanBlue;
+        this.meanGreen = meanGreen;
+        this.meanRed = meanRed;
+        this.luminanceHistogram = luminanceHistogram;
+        this.dominantColors = dominantColors;
+        this.warmRatio = warmRatio;
+        this.coolRatio = coolRatio;
+    }
+    
+    public static ColorStatistics of(Mat bgrImage, int maxEdge) {
+        try (NativeArena arena = new NativeArena()) {
+            Mat sample = bgrImage;
+            int longestEdge = Math.max(bgrImage.cols(), bgrImage.rows());
+            if (maxEdge > 0 && longestEdge > maxEdge) {
+                double scale = (double) maxEdge / longestEdge;
+                sample = arena.newMat();
+                Imgproc.resize(bgrImage, sample, new Size(Math.max(1, Math.round(bgrImage.cols() * scale)), 
+                                                          Math.max(1, Math.round(bgrImage.rows() * scale))), 
+                               0, 0, Imgproc.INTER_AREA);
+            }
+            if (sample.type() != CvType.CV_8UC3) {
+                throw new IllegalArgumentException("Expected an 8-bit BGR image");
+            }
+            
+            // One bulk copy out of native memory, then everything is computed from the same loop
+            byte[] pixels = new byte[(int) sample.total() * 3];
+            sample.get(0, 0, pixels);
+            return compute(pixels);
+        }
+    }
+    
+    private static ColorStatistics compute(byte[] pixels) {
+        int pixelCount = pixels.length / 3;
+        long sumBlue = 0, sumGreen = 0, sumRed = 0;
+        int warm = 0, cool = 0;
+        int[] luminance = new int[LUMINANCE_BINS];
+        int[] paletteCounts = new int[PALETTE_SIZE];
+        long[] paletteSums = new long[PALETTE_SIZE * 3];
+        
+        for (int i = 0; i < pixels.length; i += 3) {
+            int blue = pixels[i] & 0xFF;
+            int green = pixels[i + 1] & 0xFF;
+            int red = pixels[i + 2] & 0xFF;
+            
+            sumBlue += blue;
+            sumGreen += green;
+            sumRed += red;
+            
+            // Rec. 601 luma in integer arithmetic
+            int luma = (299 * red + 587 * green + 114 * blue) / 1000;
+            luminance[luma * LUMINANCE_BINS / 256]++;
+            
+            if (red > blue + TONE_MARGIN) {
+                warm++;
+            } else if (blue > red + TONE_MARGIN) {
+                cool++;
+            }
+            
+            int shift = 8 - PALETTE_BITS;
+            int bin = ((red >> shift) << (PALETTE_BITS * 2)) | ((green >> shift) << PALETTE_BITS) | (blue >> shift);
+            paletteCounts[bin]++;
+            paletteSums[bin * 3] += red;
+            paletteSums[bin * 3 + 1] += green;
+            paletteSums[bin * 3 + 2] += blue;
+        }
+        
+        if (pixelCount == 0) {
+            return new ColorStatistics(0, 0, 0, luminance, new ArrayList<>(), 0, 0);
+        }
+        
+        return new ColorStatistics((double) sumBlue / pixelCount, (double) sumGreen / pixelCount, 
+                                   (double) sumRed / pixelCount, luminance,
+                                   dominantColors(paletteCounts, paletteSums),
+                                   (double) warm / pixelCount, (double) cool / pixelCount);
+    }
+    
+    private static List<String> dominantColors(int[] paletteCounts, long[] paletteSums) {
+        // Top few bins by population, each reported as the average colour of the pixels in it
+        List<String> colors = new ArrayList<>();
+        boolean[] taken = new boolean[PALETTE_SIZE];
+        for (int n = 0; n < DOMINANT_COLORS; n++) {
+            int best = -1;
+            for (int bin = 0; bin < PALETTE_SIZE; bin++) {
+                if (!taken[bin] && paletteCounts[bin] > 0 && (best < 0 || paletteCounts[bin] > paletteCounts[best])) {
+                    best = bin;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            taken[best] = true;
+            
+            int count = paletteCounts[best];
+            colors.add(String.format("#%02x%02x%02x", paletteSums[best * 3] / count, 
+                                     paletteSums[best * 3 + 1] / count, paletteSums[best * 3 + 2] / count));
+        }
+        return colors;
+    }
+    
+    // Average of the channel means, the brightness measure the lighting thresholds were tuned on
+    @JsonIgnore
+    public double getBrightness() {
+        return (meanBlue + meanGreen + meanRed) / 3;
+    }
+    
+    public String lighting() {
+        double brightness = getBrightness();
+        if (brightness > 180) {
+            return "Bright";
+        } else if (brightness > 120) {
+            return "Natural";
+        } else {
+            return "Dim";
+        }
+    }
+    
+    public String colorScheme() {
+        if (meanRed > meanGreen && meanRed > meanBlue) {
+            return "Warm";
+        } else if (meanBlue > meanRed && meanBlue > meanGreen) {
+            return "Cool";
+        } else {
+            return "Neutral";
+        }
+    }
+    
+    // Getters
+    public double getMeanBlue() { return meanBlue; }
+    public double getMeanGreen() { return meanGreen; }
+    public double getMeanRed() { return meanRed; }
+    public int[] getLuminanceHistogram() { return luminanceHistogram; }
+    public List<String> getDominantColors() { return dominantColors; }
+    public double getWarmRatio() { return warmRatio; }
+    public double getCoolRatio() { return coolRatio; }
+}
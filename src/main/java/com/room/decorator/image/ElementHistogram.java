@@ -0,0 +1,200 @@
+package com.room.decorator.image;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed-size tally of detected furniture classes: one count and one union bounding box per class,
+// however many contours the photo produces
+public final class ElementHistogram {
+    
+    public enum ElementClass {
+        TABLE("Table/Desk"),
+        CHAIR("Chair/Square Furniture"),
+        SOFA("Sofa/Long Furniture");
+        
+        private final String label;
+        
+        ElementClass(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() { return label; }
+    }
+    
+    private static final ElementClass[] CLASSES = ElementClass.values();
+    
+    private final int[] counts = new int[CLASSES.length];
+    private final int[] minX = new int[CLASSES.length];
+    private final int[] minY = new int[CLASSES.length];
+    private final int[] maxX = new int[CLASSES.length];
+    private final int[] maxY = new int[CLASSES.length];
+    
+    // Canny edges, external contours, then one bounding-box/area classification per contour
+    public static ElementHistogram detect(Mat bgrImage) {
+        // Every intermediate Mat, including one MatOfPoint per contour, is freed when the arena closes
+        try (NativeArena arena = new NativeArena()) {
+            // Convert to grayscale for edge detection
+            Mat gray = arena.newMat();
+            Imgproc.cvtColor(bgrImage, gray, Imgproc.COLOR_BGR2GRAY);
+            
+            // Detect edges
+            Mat edges = arena.newMat();
+            Imgproc.Canny(gray, edges, 50, 150);
+            
+            // Find contours (simplified furniture detection)
+            List<MatOfPoint> contours = new ArrayList<>();
+            Mat hierarchy = arena.newMat();
+            Imgproc.findContours(edges, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            arena.trackAll(contours);
+            
+            // Classify in one pass over the raw points: one bulk copy per contour into a reused buffer
+            // instead of separate boundingRect and contourArea calls through JNI
+            ElementHistogram histogram = new ElementHistogram();
+            int[] points = new int[256];
+            for (MatOfPoint contour : contours) {
+                int length = (int) contour.total() * 2;
+                if (length > points.length) {
+                    points = new int[Math.max(length, points.length * 2)];
+                }
+                contour.get(0, 0, points);
+                classifyContour(points, length, histogram);
+            }
+            return histogram;
+        }
+    }
+    
+    private static void classifyContour(int[] points, int length, ElementHistogram histogram) {
+        if (length < 6) {
+            return;
+        }
+        
+        int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+        long twiceArea = 0;
+        int prevX = points[length - 2], prevY = points[length - 1];
+        
+        for (int i = 0; i < length; i += 2) {
+            int x = points[i], y = points[i + 1];
+            left = Math.min(left, x);
+            right = Math.max(right, x);
+            top = Math.min(top, y);
+            bottom = Math.max(bottom, y);
+            // Shoelace formula, the same polygon area contourArea computes
+            twiceArea += (long) prevX * y - (long) x * prevY;
+            prevX = x;
+            prevY = y;
+        }
+        
+        // Basic heuristics for furniture detection
+        if (Math.abs(twiceArea) / 2.0 > 5000) { // Large objects
+            double aspectRatio = (double) (right - left + 1) / (bottom - top + 1);
+            
+            if (aspectRatio > 1.5 && aspectRatio < 3.0) {
+                histogram.record(ElementClass.TABLE, left, top, right, bottom);
+            } else if (aspectRatio > 0.7 && aspectRatio < 1.3) {
+                histogram.record(ElementClass.CHAIR, left, top, right, bottom);
+            } else if (aspectRatio > 3.0) {
+                histogram.record(ElementClass.SOFA, left, top, right, bottom);
+            }
+        }
+    }
+    
+    // Bounds are inclusive pixel coordinates, as read from the contour points
+    public void record(ElementClass elementClass, int left, int top, int right, int bottom) {
+        int i = elementClass.ordinal();
+        if (counts[i] == 0) {
+            minX[i] = left;
+            minY[i] = top;
+            maxX[i] = right;
+            maxY[i] = bottom;
+        } else {
+            minX[i] = Math.min(minX[i], left);
+            minY[i] = Math.min(minY[i], top);
+            maxX[i] = Math.max(maxX[i], right);
+            maxY[i] = Math.max(maxY[i], bottom);
+        }
+        counts[i]++;
+    }
+    
+    @JsonIgnore
+    public boolean isEmpty() {
+        for (int count : counts) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public int getCount(ElementClass elementClass) {
+        return counts[elementClass.ordinal()];
+    }
+    
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>();
+        for (ElementClass elementClass : CLASSES) {
+            int i = elementClass.ordinal();
+            if (counts[i] > 0) {
+                entries.add(new Entry(elementClass.getLabel(), counts[i], minX[i], minY[i], 
+                                      maxX[i] - minX[i] + 1, maxY[i] - minY[i] + 1));
+            }
+        }
+        return entries;
+    }
+    
+    // One label per detected class, e.g. for the detectedElements list of the analysis
+    public List<String> labels() {
+        List<String> labels = new ArrayList<>();
+        for (ElementClass elementClass : CLASSES) {
+            if (counts[elementClass.ordinal()] > 0) {
+                labels.add(elementClass.getLabel());
+            }
+        }
+        return labels;
+    }
+    
+    // Compact prompt form, e.g. "2 table/desk, 5 chair/square furniture"
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (ElementClass elementClass : CLASSES) {
+            int count = counts[elementClass.ordinal()];
+            if (count > 0) {
+                if (summary.length() > 0) {
+                    summary.append(", ");
+                }
+                summary.append(count).append(' ').append(elementClass.getLabel().toLowerCase());
+            }
+        }
+        return summary.toString();
+    }
+    
+    public static class Entry {
+        private final String label;
+        private final int count;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        
+        Entry(String label, int count, int x, int y, int width, int height) {
+            this.label = label;
+            this.count = count;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+        
+        public String getLabel() { return label; }
+        public int getCount() { return count; }
+        public int getX() { return x; }
+        public int getY() { return y; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+    }
+}
@@ -0,0 +1,196 @@
+package com.room.decorator.image;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+
+// One image per request: the raw bytes are read once and the base64 form is encoded at most once,
+// then shared by every stage that needs it (analysis, Vision upload, img2img upload, hashing)
+public final class ImageBuffer {
+    
+    private final byte[] data;
+    private final String mediaType;
+    
+    // "data:<type>;base64,<payload>" as ASCII bytes; the plain base64 form is a view into it
+    private volatile byte[] dataUrl;
+    private volatile int base64Offset;
+    private volatile String sha256;
+    
+    private ImageBuffer(byte[] data, byte[] dataUrl, int base64Offset) {
+        this.data = data;
+        this.mediaType = sniffMediaType(data);
+        this.dataUrl = dataUrl;
+        this.base64Offset = base64Offset;
+    }
+    
+    public static ImageBuffer wrap(byte[] data) {
+        return new ImageBuffer(data, null, 0);
+    }
+    
+    public static ImageBuffer fromMultipart(MultipartFile file) throws IOException {
+        // Read into an array of the exact size instead of growing a ByteArrayOutputStream as getBytes() does
+        try (InputStream in = file.getInputStream()) {
+            long size = file.getSize();
+            byte[] data = size > 0 && size <= Integer.MAX_VALUE ? in.readNBytes((int) size) : in.readAllBytes();
+            return wrap(data);
+        }
+    }
+    
+    public static ImageBuffer fromBase64(String base64) {
+        // The client already sent base64, so keep it for outbound calls rather than re-encoding later
+        byte[] data = Base64.getDecoder().decode(base64);
+        ImageBuffer buffer = wrap(data);
+        byte[] prefix = buffer.dataUrlPrefix();
+        byte[] dataUrl = new byte[prefix.length + base64.length()];
+        System.arraycopy(prefix, 0, dataUrl, 0, prefix.length);
+        for (int i = 0; i < base64.length(); i++) {
+            dataUrl[prefix.length + i] = (byte) base64.charAt(i);
+        }
+        return new ImageBuffer(data, dataUrl, prefix.length);
+    }
+    
+    public byte[] bytes() { return data; }
+    public int size() { return data.length; }
+    public String getMediaType() { return mediaType; }
+    
+    public EncodedImage base64() {
+        byte[] encoded = encoded();
+        return new EncodedImage(encoded, base64Offset, encoded.length - base64Offset);
+    }
+    
+    public EncodedImage dataUrl() {
+        byte[] encoded = encoded();
+        return new EncodedImage(encoded, 0, encoded.length);
+    }
+    
+    public String sha256() {
+        String hash = sha256;
+        if (hash == null) {
+            try {
+                hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+            sha256 = hash;
+        }
+        return hash;
+    }
+    
+    private byte[] encoded() {
+        byte[] encoded = dataUrl;
+        if (encoded == null) {
+            synchronized (this) {
+                encoded = dataUrl;
+                if (encoded == null) {
+                    encoded = encodeDataUrl();
+                    base64Offset = dataUrlPrefix().length;
+                    dataUrl = encoded;
+                }
+            }
+        }
+        return encoded;
+    }
+    
+    private byte[] encodeDataUrl() {
+        byte[] prefix = dataUrlPrefix();
+        byte[] target = new byte[prefix.length + 4 * ((data.length + 2) / 3)];
+        System.arraycopy(prefix, 0, target, 0, prefix.length);
+        
+        // Encode straight into the target array behind the prefix, no intermediate String
+        try (OutputStream out = Base64.getEncoder().wrap(new ArrayOutputStream(target, prefix.length))) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Base64 encoding failed", e);
+        }
+        return target;
+    }
+    
+    private byte[] dataUrlPrefix() {
+        return ("data:" + mediaType + ";base64,").getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    public static String sniffMediaType(byte[] data) {
+        if (data.length > 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8) {
+            return "image/jpeg";
+        }
+        if (data.length > 12 && data[0] == 'R' && data[1] == 'I' 
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return "image/webp";
+        }
+        if (data.length > 8 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return "image/png";
+        }
+        // Unknown signature; JPEG is what the Vision API assumed before
+        return "image/jpeg";
+    }
+    
+    // A slice of pre-encoded ASCII that Jackson writes as a JSON string without building a String
+    @JsonSerialize(using = EncodedImage.Serializer.class)
+    public static final class EncodedImage {
+        private final byte[] ascii;
+        private final int offset;
+        private final int length;
+        
+        EncodedImage(byte[] ascii, int offset, int length) {
+            this.ascii = ascii;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        public int length() { return length; }
+        
+        @Override
+        public String toString() {
+            return new String(ascii, offset, length, StandardCharsets.US_ASCII);
+        }
+        
+        static class Serializer extends StdSerializer<EncodedImage> {
+            Serializer() {
+                super(EncodedImage.class);
+            }
+            
+            @Override
+            public void serialize(EncodedImage value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                try {
+                    // Base64 needs no escaping, so the bytes can go out as-is
+                    gen.writeRawUTF8String(value.ascii, value.offset, value.length);
+                } catch (UnsupportedOperationException e) {
+                    // Character-based generators cannot take raw bytes
+                    gen.writeString(value.toString());
+                }
+            }
+        }
+    }
+    
+    private static final class ArrayOutputStream extends OutputStream {
+        private final byte[] target;
+        private int position;
+        
+        ArrayOutputStream(byte[] target, int position) {
+            this.target = target;
+            this.position = position;
+        }
+        
+        @Override
+        public void write(int b) {
+            target[position++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.arraycopy(b, off, target, position, len);
+            position += len;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.room.decorator.image;
+
+import com.room.decorator.observability.PipelineObservations;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Decodes an upload once, bounds its size and re-encodes a compact copy for the Vision call
+@Component
+public class ImagePreprocessor {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessor.class);
+    
+    static {
+        loadNatives();
+    }
+    
+    @Value("${app.image.max-edge:1024}")
+    private int maxEdge;
+    
+    @Value("${app.image.format:jpg}")
+    private String format;
+    
+    @Value("${app.image.quality:85}")
+    private int quality;
+    
+    @Autowired
+    private PipelineObservations observations;
+    
+    public ImagePreprocessor(MeterRegistry meterRegistry) {
+        Gauge.builder("opencv.native.bytes", NativeArena::totalBytesInUse)
+            .description("Native memory held by OpenCV Mats in open arenas")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("opencv.native.arenas", NativeArena::openArenas)
+            .description("OpenCV native arenas not yet closed")
+            .register(meterRegistry);
+    }
+    
+    // Settings are injected by Spring; the setters configure an instance built without a context, as the benchmarks do
+    public void setMaxEdge(int maxEdge) { this.maxEdge = maxEdge; }
+    public void setFormat(String format) { this.format = format; }
+    public void setQuality(int quality) { this.quality = quality; }
+    public void setObservations(PipelineObservations observations) { this.observations = observations; }
+    
+    public PreparedImage prepare(ImageBuffer original) {
+        // The shared Mat lives in its own arena, owned by the PreparedImage; decode/encode scratch is freed here
+        NativeArena imageArena = new NativeArena();
+        boolean handedOver = false;
+        
+        try (NativeArena scratch = new NativeArena()) {
+            // IMREAD_COLOR applies the EXIF orientation tag, so the Mat is already upright
+            Mat image = observations.stage("opencv.decode").observe(() -> {
+                Mat decoded = imageArena.track(Imgcodecs.imdecode(scratch.track(new MatOfByte(original.bytes())), Imgcodecs.IMREAD_COLOR));
+                if (decoded.empty()) {
+                    throw new IllegalArgumentException("Unsupported or corrupt image");
+                }
+                return downscale(decoded, imageArena);
+            });
+            
+            ImageBuffer encoded = observations.stage("opencv.encode").observe(() -> encode(image, scratch));
+            PreparedImage prepared = new PreparedImage(image, encoded, imageArena);
+            handedOver = true;
+            return prepared;
+            
+        } finally {
+            // Whatever was thrown, errors such as UnsatisfiedLinkError included, the Mat has no other owner
+            if (!handedOver) {
+                imageArena.close();
+            }
+        }
+    }
+    
+    private Mat downscale(Mat decoded, NativeArena arena) {
+        int longestEdge = Math.max(decoded.cols(), decoded.rows());
+        if (maxEdge <= 0 || longestEdge <= maxEdge) {
+            return decoded;
+        }
+        
+        // INTER_AREA avoids the aliasing that would otherwise show up as spurious Canny edges
+        double scale = (double) maxEdge / longestEdge;
+        Mat resized = arena.newMat();
+        Imgproc.resize(decoded, resized, new Size(Math.round(decoded.cols() * scale), Math.round(decoded.rows() * scale)), 
+                       0, 0, Imgproc.INTER_AREA);
+        // Free the full-size decode now rather than when the analysis finishes
+        decoded.release();
+        return resized;
+    }
+    
+    private ImageBuffer encode(Mat image, NativeArena scratch) {
+        boolean webp = "webp".equalsIgnoreCase(format);
+        MatOfInt params = scratch.track(new MatOfInt(webp ? Imgcodecs.IMWRITE_WEBP_QUALITY : Imgcodecs.IMWRITE_JPEG_QUALITY, quality));
+        MatOfByte encoded = scratch.track(new MatOfByte());
+        
+        if (!Imgcodecs.imencode(webp ? ".webp" : ".jpg", image, encoded, params)) {
+            throw new IllegalStateException("Could not re-encode image as " + format);
+        }
+        return ImageBuffer.wrap(encoded.toArray());
+    }
+    
+    private static void loadNatives() {
+        try {
+            // The org.opencv classes on the classpath come from the bytedeco build and need its JNI libraries
+            org.bytedeco.javacpp.Loader.load(org.bytedeco.opencv.opencv_java.class);
+        } catch (Throwable e) {
+            // Analysis stages fall back to their degraded values when OpenCV is unavailable
+            logger.error("Could not load OpenCV native libraries", e);
+        }
+    }
+    
+    // The decoded, size-bounded Mat shared by all CV stages plus the compact encoding of it
+    public static class PreparedImage {
+        private final Mat image;
+        private final ImageBuffer encoded;
+        private final NativeArena arena;
+        
+        PreparedImage(Mat image, ImageBuffer encoded, NativeArena arena) {
+            this.image = image;
+            this.encoded = encoded;
+            this.arena = arena;
+        }
+        
+        public Mat getImage() { return image; }
+        public ImageBuffer getEncoded() { return encoded; }
+        
+        public void release() {
+            arena.close();
+        }
+    }
+}
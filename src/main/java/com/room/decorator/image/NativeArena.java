@@ -0,0 +1,78 @@
+package com.room.decorator.image;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Scope for OpenCV native allocations: every Mat created through or handed to the arena is released
+// deterministically on close instead of whenever the GC gets round to finalizing it
+public final class NativeArena implements AutoCloseable {
+    
+    private static final Set<NativeArena> OPEN_ARENAS = ConcurrentHashMap.newKeySet();
+    
+    private final List<Mat> mats = new ArrayList<>();
+    private boolean closed;
+    
+    public NativeArena() {
+        OPEN_ARENAS.add(this);
+    }
+    
+    public Mat newMat() {
+        return track(new Mat());
+    }
+    
+    public synchronized <T extends Mat> T track(T mat) {
+        if (closed) {
+            mat.release();
+            throw new IllegalStateException("Arena already closed");
+        }
+        mats.add(mat);
+        return mat;
+    }
+    
+    public <T extends Mat> Collection<T> trackAll(Collection<T> matList) {
+        for (T mat : matList) {
+            track(mat);
+        }
+        return matList;
+    }
+    
+    // Sizes are read now rather than at allocation, since output Mats are only filled in by later calls
+    public synchronized long bytesInUse() {
+        long bytes = 0;
+        for (Mat mat : mats) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        return bytes;
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        OPEN_ARENAS.remove(this);
+        
+        for (Mat mat : mats) {
+            mat.release();
+        }
+        mats.clear();
+    }
+    
+    public static long totalBytesInUse() {
+        long bytes = 0;
+        for (NativeArena arena : OPEN_ARENAS) {
+            bytes += arena.bytesInUse();
+        }
+        return bytes;
+    }
+    
+    public static int openArenas() {
+        return OPEN_ARENAS.size();
+    }
+}
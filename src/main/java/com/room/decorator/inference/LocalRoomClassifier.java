@@ -0,0 +1,387 @@
+package com.room.decorator.inference;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.Classifications;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.transform.Normalize;
+import ai.djl.modality.cv.transform.Resize;
+import ai.djl.modality.cv.transform.ToTensor;
+import ai.djl.modality.cv.translator.ImageClassificationTranslator;
+import ai.djl.modality.cv.translator.YoloV5Translator;
+import ai.djl.repository.zoo.Criteria;
+import ai.djl.repository.zoo.ZooModel;
+import com.room.decorator.image.NativeArena;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// Scene classifier and object detector run on CPU through DJL/PyTorch, so a room type is available without
+// a network round-trip. Disabled unless model URLs are configured; a model that fails to load disables it.
+@Component
+public class LocalRoomClassifier {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LocalRoomClassifier.class);
+    
+    // ImageNet statistics, which the usual scene (Places365) backbones are trained with
+    private static final float[] MEAN = {0.485f, 0.456f, 0.406f};
+    private static final float[] STD = {0.229f, 0.224f, 0.225f};
+    
+    // How long shutdown waits for a forward pass in progress before closing the models under it
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    
+    // How often a caller waiting for free predictors checks the models are still loaded
+    private static final long BORROW_POLL_MS = 100;
+    
+    @Value("${app.local-model.enabled:false}")
+    private boolean enabled;
+    
+    // TorchScript scene classifier with a synset.txt next to it (file:, jar:, https: or djl: URL)
+    @Value("${app.local-model.classifier-url:}")
+    private String classifierUrl;
+    
+    // Optional YOLOv5 TorchScript detector for furniture; blank skips object detection
+    @Value("${app.local-model.detector-url:}")
+    private String detectorUrl;
+    
+    @Value("${app.local-model.input-size:224}")
+    private int inputSize;
+    
+    @Value("${app.local-model.detector-input-size:640}")
+    private int detectorInputSize;
+    
+    @Value("${app.local-model.detector-threshold:0.4}")
+    private float detectorThreshold;
+    
+    // Predictions run on a blank image at startup with every pooled predictor, so the first requests
+    // do not pay for lazy initialisation
+    @Value("${app.local-model.warmup-iterations:3}")
+    private int warmupIterations;
+    
+    // Concurrent requests are gathered into one forward pass of up to max-batch-size images,
+    // holding the first image at most max-wait-ms
+    @Value("${app.local-model.batching.enabled:true}")
+    private boolean batchingEnabled;
+    
+    @Value("${app.local-model.batching.max-batch-size:8}")
+    private int maxBatchSize;
+    
+    @Value("${app.local-model.batching.max-wait-ms:10}")
+    private long maxBatchWaitMs;
+    
+    // Threads running forward passes; the predictor pool holds one set per worker
+    @Value("${app.local-model.batching.workers:1}")
+    private int batchWorkers;
+    
+    @Value("${app.local-model.batching.max-queued:256}")
+    private int maxQueued;
+    
+    // Predictor sets pooled when batching is off; further callers wait for one to be handed back
+    @Value("${app.local-model.predictors:2}")
+    private int predictorPoolSize;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private ZooModel<Image, Classifications> classifierModel;
+    private ZooModel<Image, DetectedObjects> detectorModel;
+    
+    // Predictors are not thread-safe but share the model weights; a forward pass borrows one set from a
+    // fixed pool, so the number of native predictors does not grow with the threads calling in
+    private BlockingQueue<Predictors> predictors;
+    private int pooledPredictors;
+    private final Queue<AutoCloseable> openPredictors = new ConcurrentLinkedQueue<>();
+    
+    private MicroBatcher<Image, RoomClassification> batcher;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled || classifierUrl.isBlank()) {
+            logger.info("Local room classifier disabled");
+            return;
+        }
+        
+        try {
+            classifierModel = Criteria.builder()
+                .setTypes(Image.class, Classifications.class)
+                .optModelUrls(classifierUrl)
+                .optEngine("PyTorch")
+                .optTranslator(ImageClassificationTranslator.builder()
+                    .addTransform(new Resize(inputSize, inputSize))
+                    .addTransform(new ToTensor())
+                    .addTransform(new Normalize(MEAN, STD))
+                    .optApplySoftmax(true)
+                    .build())
+                .build()
+                .loadModel();
+            
+            if (!detectorUrl.isBlank()) {
+                detectorModel = Criteria.builder()
+                    .setTypes(Image.class, DetectedObjects.class)
+                    .optModelUrls(detectorUrl)
+                    .optEngine("PyTorch")
+                    .optTranslator(YoloV5Translator.builder()
+                        .addTransform(new Resize(detectorInputSize, detectorInputSize))
+                        .addTransform(new ToTensor())
+                        .optThreshold(detectorThreshold)
+                        .build())
+                    .build()
+                    .loadModel();
+            }
+            
+            int poolSize = Math.max(1, batchingEnabled ? batchWorkers : predictorPoolSize);
+            predictors = new ArrayBlockingQueue<>(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                Predictors set = new Predictors(track(classifierModel.newPredictor()), 
+                                                detectorModel != null ? track(detectorModel.newPredictor()) : null);
+                warmUp(set);
+                predictors.add(set);
+                pooledPredictors++;
+            }
+            if (batchingEnabled) {
+                batcher = new MicroBatcher<>("room-classifier", maxBatchSize, maxBatchWaitMs, batchWorkers, maxQueued, 
+                                             this::classifyAll, meterRegistry);
+            }
+            logger.info("Local room classifier loaded from {}{}", classifierUrl, 
+                        detectorModel != null ? ", object detector from " + detectorUrl : "");
+            
+        } catch (Throwable e) {
+            // Room analysis carries on with the OpenCV heuristics and the Vision call
+            logger.error("Could not load local room models, disabling the local classifier", e);
+            shutdown();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            // A forward pass still running would use the predictors and models closed below
+            try {
+                if (!batcher.close(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.warn("Room classifier batch still running after {} s, closing the models anyway", 
+                                SHUTDOWN_TIMEOUT_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batcher = null;
+        }
+        reclaimPredictors();
+        AutoCloseable predictor;
+        while ((predictor = openPredictors.poll()) != null) {
+            try {
+                predictor.close();
+            } catch (Exception e) {
+                logger.debug("Error closing predictor", e);
+            }
+        }
+        if (detectorModel != null) {
+            detectorModel.close();
+            detectorModel = null;
+        }
+        if (classifierModel != null) {
+            classifierModel.close();
+            classifierModel = null;
+        }
+    }
+    
+    public boolean isAvailable() {
+        return classifierModel != null;
+    }
+    
+    // Copies the Mat into a JVM-side image, so the model input outlives the native buffers of the analysis
+    public Image toImage(Mat image) {
+        try (NativeArena arena = new NativeArena()) {
+            // The model resizes to its input size anyway; shrinking here keeps the pixel copy small
+            int edge = Math.max(inputSize, detectorModel != null ? detectorInputSize : 0);
+            double scale = Math.min(1.0, (double) edge / Math.max(image.cols(), image.rows()));
+            Mat small = arena.newMat();
+            Imgproc.resize(image, small, new Size(Math.max(1, Math.round(image.cols() * scale)), 
+                                                  Math.max(1, Math.round(image.rows() * scale))), 
+                           0, 0, Imgproc.INTER_AREA);
+            
+            int width = small.cols();
+            int height = small.rows();
+            byte[] bgr = new byte[width * height * 3];
+            small.get(0, 0, bgr);
+            
+            int[] argb = new int[width * height];
+            for (int i = 0, p = 0; i < argb.length; i++, p += 3) {
+                argb[i] = 0xFF000000 | (bgr[p + 2] & 0xFF) << 16 | (bgr[p + 1] & 0xFF) << 8 | (bgr[p] & 0xFF);
+            }
+            return ImageFactory.getInstance().fromPixels(argb, width, height);
+        }
+    }
+    
+    public RoomClassification classify(Image image) throws Exception {
+        return classifyAll(Collections.singletonList(image)).get(0);
+    }
+    
+    // Batched with other requests' images when batching is on, otherwise classified on the calling thread
+    public CompletableFuture<RoomClassification> classifyAsync(Image image) {
+        MicroBatcher<Image, RoomClassification> current = batcher;
+        if (current != null) {
+            return current.submit(image);
+        }
+        
+        try {
+            return CompletableFuture.completedFuture(classify(image));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    // One forward pass per model for the whole list, on a predictor set borrowed from the pool
+    public List<RoomClassification> classifyAll(List<Image> images) throws Exception {
+        Predictors set = borrow();
+        try {
+            return classifyAll(set, images);
+        } finally {
+            predictors.add(set);
+        }
+    }
+    
+    private List<RoomClassification> classifyAll(Predictors set, List<Image> images) throws Exception {
+        long start = System.nanoTime();
+        List<Classifications> scenes = set.classifier.batchPredict(images);
+        inferenceTimer("classifier").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        
+        List<DetectedObjects> objects = null;
+        if (set.detector != null) {
+            start = System.nanoTime();
+            objects = set.detector.batchPredict(images);
+            inferenceTimer("detector").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        
+        List<RoomClassification> results = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            Classifications.Classification best = scenes.get(i).best();
+            results.add(new RoomClassification(roomTypeOf(best.getClassName()), best.getClassName(), 
+                                               best.getProbability(), 
+                                               objects != null ? objectLabels(objects.get(i)) : List.of()));
+        }
+        return results;
+    }
+    
+    // Waits for a free predictor set, giving up once the models have been closed
+    private Predictors borrow() throws InterruptedException {
+        while (true) {
+            if (!isAvailable()) {
+                throw new IllegalStateException("Local room classifier is not available");
+            }
+            Predictors set = predictors.poll(BORROW_POLL_MS, TimeUnit.MILLISECONDS);
+            if (set != null) {
+                return set;
+            }
+        }
+    }
+    
+    // Takes every predictor set back, so none is closed under a forward pass still running
+    private void reclaimPredictors() {
+        if (predictors == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        try {
+            for (; pooledPredictors > 0; pooledPredictors--) {
+                if (predictors.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) == null) {
+                    logger.warn("Room classifier forward pass still running after {} s, closing the models anyway", 
+                                SHUTDOWN_TIMEOUT_SECONDS);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void warmUp(Predictors set) throws Exception {
+        Image blank = ImageFactory.getInstance().fromPixels(new int[inputSize * inputSize], inputSize, inputSize);
+        for (int i = 0; i < warmupIterations; i++) {
+            classifyAll(set, List.of(blank));
+        }
+    }
+    
+    private <T extends AutoCloseable> T track(T predictor) {
+        openPredictors.add(predictor);
+        return predictor;
+    }
+    
+    // Scene labels look like "/b/bedroom" or "living_room"; known scenes map onto the app's room types
+    static String roomTypeOf(String label) {
+        String scene = label.substring(label.lastIndexOf('/') + 1).replace('_', ' ').trim().toLowerCase(Locale.ROOT);
+        if (scene.contains("kitchen")) {
+            return "Kitchen";
+        } else if (scene.contains("bedroom") || scene.contains("dorm")) {
+            return "Bedroom";
+        } else if (scene.contains("bathroom") || scene.contains("shower")) {
+            return "Bathroom";
+        } else if (scene.contains("dining")) {
+            return "Dining Room";
+        } else if (scene.contains("living") || scene.contains("television room") || scene.contains("recreation room")) {
+            return "Living Room";
+        }
+        return titleCase(scene);
+    }
+    
+    private static List<String> objectLabels(DetectedObjects detected) {
+        Set<String> labels = new LinkedHashSet<>();
+        for (DetectedObjects.DetectedObject object : detected.<DetectedObjects.DetectedObject>items()) {
+            labels.add(titleCase(object.getClassName().replace('_', ' ')));
+        }
+        return new ArrayList<>(labels);
+    }
+    
+    private static String titleCase(String text) {
+        StringBuilder result = new StringBuilder();
+        for (String word : text.trim().split("\\s+")) {
+            if (!word.isEmpty()) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+            }
+        }
+        return result.length() > 0 ? result.toString() : "General Room";
+    }
+    
+    private static final class Predictors {
+        private final Predictor<Image, Classifications> classifier;
+        private final Predictor<Image, DetectedObjects> detector;
+        
+        Predictors(Predictor<Image, Classifications> classifier, Predictor<Image, DetectedObjects> detector) {
+            this.classifier = classifier;
+            this.detector = detector;
+        }
+    }
+    
+    private Timer inferenceTimer(String model) {
+        return Timer.builder("room.classifier.inference")
+            .description("Local model forward passes")
+            .tag("model", model)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,185 @@
+package com.room.decorator.inference;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Collects single inputs from concurrent callers into batches of up to maxBatchSize, waiting at most maxWait
+// after the first one, runs one batched call and completes each caller's future with its own result.
+// Every worker thread collects and runs its own batches, so thread-confined predictors stay on one thread.
+public class MicroBatcher<I, O> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    // One batched call; must return exactly one output per input, in input order
+    public interface BatchFunction<I, O> {
+        List<O> apply(List<I> inputs) throws Exception;
+    }
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BatchFunction<I, O> batchFunction;
+    private final BlockingQueue<Pending<I, O>> queue;
+    private final ExecutorService workers;
+
+    private final Timer queueWait;
+    private final Timer compute;
+    private final DistributionSummary batchSize;
+
+    private volatile boolean running = true;
+
+    public MicroBatcher(String name, int maxBatchSize, long maxWaitMs, int workerCount, int maxQueued,
+                        BatchFunction<I, O> batchFunction, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.batchFunction = batchFunction;
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, maxQueued));
+
+        this.queueWait = Timer.builder("inference.batch.queue.wait")
+            .description("Time an input waited for its batch to start")
+            .tag("model", name)
+            .register(meterRegistry);
+        this.compute = Timer.builder("inference.batch.compute")
+            .description("Time spent in one batched forward pass")
+            .tag("model", name)
+            .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("inference.batch.size")
+            .description("Inputs per batched forward pass")
+            .tag("model", name)
+            .register(meterRegistry);
+
+        int threads = Math.max(1, workerCount);
+        this.workers = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory(name + "-batch-"));
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::runWorker);
+        }
+    }
+
+    public CompletableFuture<O> submit(I input) {
+        Pending<I, O> pending = new Pending<>(input);
+        if (!running) {
+            pending.future.completeExceptionally(new RejectedExecutionException(name + " inference is shutting down"));
+        } else if (!queue.offer(pending)) {
+            // A full queue means inference is already behind; callers fall back instead of piling up
+            pending.future.completeExceptionally(new RejectedExecutionException(name + " inference queue is full"));
+        }
+        return pending.future;
+    }
+
+    // Waits up to the timeout for a batch already in its forward pass to finish, so the models it uses can be
+    // closed safely afterwards. Returns false if a worker is still running.
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        workers.shutdownNow();
+        Pending<I, O> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException(name + " inference is shutting down"));
+        }
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        try {
+            close(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWorker() {
+        List<Pending<I, O>> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running) {
+                collectBatch(batch);
+                if (!batch.isEmpty()) {
+                    runBatch(batch);
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Pending<I, O> pending : batch) {
+                pending.future.completeExceptionally(new RejectedExecutionException(name + " inference is shutting down"));
+            }
+        }
+    }
+
+    private void collectBatch(List<Pending<I, O>> batch) throws InterruptedException {
+        Pending<I, O> first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+            return;
+        }
+        addIfWanted(batch, first);
+
+        // Fill up to the batch size, but never hold the first input longer than the max wait
+        long deadline = first.enqueuedAt + maxWaitNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            Pending<I, O> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                break;
+            }
+            addIfWanted(batch, next);
+        }
+    }
+
+    private static <I, O> void addIfWanted(List<Pending<I, O>> batch, Pending<I, O> pending) {
+        // Callers that cancelled their future are not worth a slot in the forward pass
+        if (!pending.future.isDone()) {
+            batch.add(pending);
+        }
+    }
+
+    private void runBatch(List<Pending<I, O>> batch) {
+        long start = System.nanoTime();
+        List<I> inputs = new ArrayList<>(batch.size());
+        for (Pending<I, O> pending : batch) {
+            queueWait.record(start - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+            inputs.add(pending.input);
+        }
+        batchSize.record(batch.size());
+
+        try {
+            List<O> outputs = batchFunction.apply(inputs);
+            compute.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (outputs.size() != batch.size()) {
+                throw new IllegalStateException("Batch returned " + outputs.size() + " results for " + batch.size() + " inputs");
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(outputs.get(i));
+            }
+        } catch (Exception e) {
+            logger.error("Batched {} inference over {} inputs failed", name, batch.size(), e);
+            for (Pending<I, O> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Pending<I, O> {
+        private final I input;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<O> future = new CompletableFuture<>();
+
+        Pending(I input) {
+            this.input = input;
+        }
+    }
+}
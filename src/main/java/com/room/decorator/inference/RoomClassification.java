@@ -0,0 +1,34 @@
+package com.room.decorator.inference;
+
+import java.util.List;
+
+// What the local models saw in one photo: the scene label mapped to a room type, and the detected objects
+public class RoomClassification {
+    private final String roomType;
+    private final String label;
+    private final double confidence;
+    private final List<String> objects;
+    
+    public RoomClassification(String roomType, String label, double confidence, List<String> objects) {
+        this.roomType = roomType;
+        this.label = label;
+        this.confidence = confidence;
+        this.objects = objects;
+    }
+    
+    public String getRoomType() { return roomType; }
+    public String getLabel() { return label; }
+    public double getConfidence() { return confidence; }
+    public List<String> getObjects() { return objects; }
+    
+    // Plain-text stand-in for the Vision description when the local result is used on its own
+    public String describe() {
+        StringBuilder description = new StringBuilder("Local analysis: ")
+            .append(roomType)
+            .append(String.format(" (%d%% confidence)", Math.round(confidence * 100)));
+        if (!objects.isEmpty()) {
+            description.append(" with ").append(String.join(", ", objects));
+        }
+        return description.append('.').toString();
+    }
+}
@@ -7,6 +7,8 @@ public class DecoratedRoomOption {
     private String id;
     private String designStyle;
     private String imageBase64;
+    private String imageId;
+    private String imageUrl;
     private String description;
     private List<String> addedElements;
     private List<String> modifiedElements;
@@ -37,6 +39,12 @@ public class DecoratedRoomOption {
     public String getImageBase64() { return imageBase64; }
     public void setImageBase64(String imageBase64) { this.imageBase64 = imageBase64; }
     
+    public String getImageId() { return imageId; }
+    public void setImageId(String imageId) { this.imageId = imageId; }
+    
+    public String getImageUrl() { return imageUrl; }
+    public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+    
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
     
@@ -0,0 +1,123 @@
+package com.room.decorator.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "decoration_jobs", indexes = @Index(name = "idx_decoration_jobs_status", columnList = "status, createdAt"))
+public class DecorationJob {
+    
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+    
+    private static final int ERROR_MESSAGE_LENGTH = 1000;
+    
+    @Id
+    private String id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+    
+    private String designStyle;
+    private String roomType;
+    private String colorPreference;
+    private String budgetRange;
+    private boolean preserveExistingFurniture;
+    
+    // Defaulted in the column so rows written before the flag existed stay readable
+    @Column(columnDefinition = "boolean default false not null")
+    private boolean reuseCachedRenders;
+    
+    // Cleared once the job finishes so completed jobs do not keep the upload around
+    @Lob
+    private byte[] imageData;
+    
+    @Lob
+    private String resultJson;
+    
+    @Column(length = ERROR_MESSAGE_LENGTH)
+    private String errorMessage;
+    
+    private int attempts;
+    
+    // A job re-queued because the provider was out of quota is not claimed again before this time
+    private Instant notBefore;
+    
+    private Instant createdAt;
+    private Instant updatedAt;
+    
+    // Constructors
+    public DecorationJob() {}
+    
+    public DecorationJob(String id, byte[] imageData, DecorationRequest request) {
+        this.id = id;
+        this.status = Status.QUEUED;
+        this.imageData = imageData;
+        this.designStyle = request.getDesignStyle();
+        this.roomType = request.getRoomType();
+        this.colorPreference = request.getColorPreference();
+        this.budgetRange = request.getBudgetRange();
+        this.preserveExistingFurniture = request.isPreserveExistingFurniture();
+        this.reuseCachedRenders = request.isReuseCachedRenders();
+        this.createdAt = Instant.now();
+        this.updatedAt = this.createdAt;
+    }
+    
+    public DecorationRequest toDecorationRequest() {
+        return new DecorationRequest(designStyle, roomType, colorPreference, budgetRange, 
+                                     preserveExistingFurniture, reuseCachedRenders);
+    }
+    
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+    
+    public String getDesignStyle() { return designStyle; }
+    public void setDesignStyle(String designStyle) { this.designStyle = designStyle; }
+    
+    public String getRoomType() { return roomType; }
+    public void setRoomType(String roomType) { this.roomType = roomType; }
+    
+    public String getColorPreference() { return colorPreference; }
+    public void setColorPreference(String colorPreference) { this.colorPreference = colorPreference; }
+    
+    public String getBudgetRange() { return budgetRange; }
+    public void setBudgetRange(String budgetRange) { this.budgetRange = budgetRange; }
+    
+    public boolean isPreserveExistingFurniture() { return preserveExistingFurniture; }
+    public void setPreserveExistingFurniture(boolean preserveExistingFurniture) { 
+        this.preserveExistingFurniture = preserveExistingFurniture; 
+    }
+    
+    public boolean isReuseCachedRenders() { return reuseCachedRenders; }
+    public void setReuseCachedRenders(boolean reuseCachedRenders) { this.reuseCachedRenders = reuseCachedRenders; }
+    
+    public byte[] getImageData() { return imageData; }
+    public void setImageData(byte[] imageData) { this.imageData = imageData; }
+    
+    public String getResultJson() { return resultJson; }
+    public void setResultJson(String resultJson) { this.resultJson = resultJson; }
+    
+    public String getErrorMessage() { return errorMessage; }
+    // Cut to the column length, so a long exception message cannot make saving the failed job fail too
+    public void setErrorMessage(String errorMessage) { 
+        this.errorMessage = errorMessage != null && errorMessage.length() > ERROR_MESSAGE_LENGTH 
+            ? errorMessage.substring(0, ERROR_MESSAGE_LENGTH) : errorMessage; 
+    }
+    
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    
+    public Instant getNotBefore() { return notBefore; }
+    public void setNotBefore(Instant notBefore) { this.notBefore = notBefore; }
+    
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
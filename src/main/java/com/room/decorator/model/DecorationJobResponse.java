@@ -0,0 +1,44 @@
+package com.room.decorator.model;
+
+import java.time.Instant;
+
+public class DecorationJobResponse {
+    private String jobId;
+    private DecorationJob.Status status;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private DecorationResponse result;
+    private String message;
+    
+    // Constructors
+    public DecorationJobResponse() {}
+    
+    public DecorationJobResponse(String jobId, DecorationJob.Status status, Instant createdAt, 
+                               Instant updatedAt, DecorationResponse result, String message) {
+        this.jobId = jobId;
+        this.status = status;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.result = result;
+        this.message = message;
+    }
+    
+    // Getters and Setters
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    
+    public DecorationJob.Status getStatus() { return status; }
+    public void setStatus(DecorationJob.Status status) { this.status = status; }
+    
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+    
+    public DecorationResponse getResult() { return result; }
+    public void setResult(DecorationResponse result) { this.result = result; }
+    
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+}
@@ -11,6 +11,8 @@ public class DecorationRequest {
     private String colorPreference;
     private String budgetRange;
     private boolean preserveExistingFurniture;
+    // Opt-in: accept an earlier render of the same style, room and preferences instead of a new generation
+    private boolean reuseCachedRenders;
     
     // Constructors
     public DecorationRequest() {}
@@ -24,6 +26,12 @@ public class DecorationRequest {
         this.preserveExistingFurniture = preserveExistingFurniture;
     }
     
+    public DecorationRequest(String designStyle, String roomType, String colorPreference, 
+                           String budgetRange, boolean preserveExistingFurniture, boolean reuseCachedRenders) {
+        this(designStyle, roomType, colorPreference, budgetRange, preserveExistingFurniture);
+        this.reuseCachedRenders = reuseCachedRenders;
+    }
+    
     // Getters and Setters
     public String getDesignStyle() { return designStyle; }
     public void setDesignStyle(String designStyle) { this.designStyle = designStyle; }
@@ -41,6 +49,9 @@ public class DecorationRequest {
     public void setPreserveExistingFurniture(boolean preserveExistingFurniture) { 
         this.preserveExistingFurniture = preserveExistingFurniture; 
     }
+    
+    public boolean isReuseCachedRenders() { return reuseCachedRenders; }
+    public void setReuseCachedRenders(boolean reuseCachedRenders) { this.reuseCachedRenders = reuseCachedRenders; }
 }
 
 
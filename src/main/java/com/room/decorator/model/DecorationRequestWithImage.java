@@ -7,6 +7,7 @@ public  class DecorationRequestWithImage {
     private String colorPreference;
     private String budgetRange;
     private boolean preserveExistingFurniture = true;
+    private boolean reuseCachedRenders;
     
     // Constructors
     public DecorationRequestWithImage() {}
@@ -31,4 +32,7 @@ public  class DecorationRequestWithImage {
     public void setPreserveExistingFurniture(boolean preserveExistingFurniture) { 
         this.preserveExistingFurniture = preserveExistingFurniture; 
     }
+    
+    public boolean isReuseCachedRenders() { return reuseCachedRenders; }
+    public void setReuseCachedRenders(boolean reuseCachedRenders) { this.reuseCachedRenders = reuseCachedRenders; }
 }
@@ -0,0 +1,125 @@
+package com.room.decorator.observability;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// One observation per decoration pipeline stage: a "decoration.stage" timer tagged by stage, provider, style and
+// variation, and a span named after the stage. Every stage carries all four tags, "none" where one does not apply,
+// because Prometheus needs the same tag keys on every series of a metric.
+@Component
+public class PipelineObservations {
+
+    public static final String METRIC = "decoration.stage";
+
+    private static final String NONE = "none";
+
+    // A stage body that may throw a checked exception, rethrown unchanged
+    public interface StageBody<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final ObservationRegistry registry;
+
+    public PipelineObservations(ObservationRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Stage stage(String name) {
+        return new Stage(name);
+    }
+
+    public final class Stage {
+        private final String name;
+        private String provider = NONE;
+        private String style = NONE;
+        private String variation = NONE;
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public Stage provider(String provider) {
+            this.provider = provider != null ? provider : NONE;
+            return this;
+        }
+
+        public Stage style(String style) {
+            this.style = style != null ? style.toLowerCase(Locale.ROOT) : NONE;
+            return this;
+        }
+
+        public Stage variation(int variation) {
+            this.variation = String.valueOf(variation);
+            return this;
+        }
+
+        public <T> T observe(Supplier<T> body) {
+            return observeChecked(body::get);
+        }
+
+        // The stage is the current observation while the body runs, so stages it starts become child spans
+        public <T, E extends Exception> T observeChecked(StageBody<T, E> body) throws E {
+            Observation observation = create().start();
+            try (Observation.Scope scope = observation.openScope()) {
+                return body.run();
+            } catch (Throwable e) {
+                observation.error(e);
+                throw e;
+            } finally {
+                observation.stop();
+            }
+        }
+
+        // Timed from subscription to completion; a cancelled Mono (a hedge loser, a timed-out caller) stops it too
+        public <T> Mono<T> observeReactive(Supplier<Mono<T>> body) {
+            return Mono.defer(() -> {
+                Observation observation = create().start();
+                Mono<T> result;
+                try {
+                    result = body.get();
+                } catch (RuntimeException e) {
+                    observation.error(e);
+                    observation.stop();
+                    throw e;
+                }
+                return result
+                    .doOnError(observation::error)
+                    .doFinally(signal -> observation.stop());
+            });
+        }
+
+        // Timed until the future completes, for stages that hand their work to another thread
+        public <T> CompletableFuture<T> observeAsync(Supplier<CompletableFuture<T>> body) {
+            Observation observation = create().start();
+            CompletableFuture<T> result;
+            try (Observation.Scope scope = observation.openScope()) {
+                result = body.get();
+            } catch (RuntimeException e) {
+                observation.error(e);
+                observation.stop();
+                throw e;
+            }
+            return result.whenComplete((value, error) -> {
+                if (error != null) {
+                    observation.error(error);
+                }
+                observation.stop();
+            });
+        }
+
+        private Observation create() {
+            return Observation.createNotStarted(METRIC, registry)
+                .contextualName(name)
+                .lowCardinalityKeyValue("stage", name)
+                .lowCardinalityKeyValue("provider", provider)
+                .lowCardinalityKeyValue("style", style)
+                .lowCardinalityKeyValue("variation", variation);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.room.decorator.ratelimit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeoutException;
+
+// Recognises provider responses that mean "slow down" and extracts how long the provider asked us to wait
+final class OverloadSignals {
+    
+    static final long NOT_OVERLOADED = -1;
+    
+    private OverloadSignals() {
+    }
+    
+    // -1 when the error is not an overload signal, otherwise the Retry-After in ms (0 when none was sent)
+    static long retryAfterMs(Throwable error) {
+        long rejected = rejectionRetryAfterMs(error);
+        if (rejected != NOT_OVERLOADED) {
+            return rejected;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            // A provider that stops answering in time is treated as overloaded as well
+            if (cause instanceof TimeoutException || cause instanceof SocketTimeoutException) {
+                return 0;
+            }
+        }
+        return NOT_OVERLOADED;
+    }
+    
+    // Like retryAfterMs, but only for an explicit 429 or 503 answer from the provider
+    static long rejectionRetryAfterMs(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException) {
+                WebClientResponseException response = (WebClientResponseException) cause;
+                return isOverloadStatus(response.getStatusCode().value()) 
+                    ? parseRetryAfter(response.getHeaders()) : NOT_OVERLOADED;
+            }
+            if (cause instanceof HttpStatusCodeException) {
+                HttpStatusCodeException response = (HttpStatusCodeException) cause;
+                return isOverloadStatus(response.getStatusCode().value()) 
+                    ? parseRetryAfter(response.getResponseHeaders()) : NOT_OVERLOADED;
+            }
+        }
+        return NOT_OVERLOADED;
+    }
+    
+    private static boolean isOverloadStatus(int status) {
+        return status == 429 || status == 503;
+    }
+    
+    private static long parseRetryAfter(HttpHeaders headers) {
+        String value = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        
+        try {
+            // Either delta-seconds or an HTTP date
+            return Duration.ofSeconds(Long.parseLong(value.trim())).toMillis();
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), retryAt).toMillis());
+            } catch (Exception ignored) {
+                return 0;
+            }
+        }
+    }
+}
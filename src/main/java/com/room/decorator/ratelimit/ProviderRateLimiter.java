@@ -0,0 +1,180 @@
+package com.room.decorator.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Client-side quota for one provider and API key: request and token buckets for the per-minute limits,
+// an AIMD concurrency limit, and a hold-off after the provider answers with Retry-After.
+// Callers wait for capacity up to a bound and are shed with RateLimitExceededException beyond it.
+public class ProviderRateLimiter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ProviderRateLimiter.class);
+    
+    // Suggested retry when there is no refill time or Retry-After to report
+    private static final long DEFAULT_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final String provider;
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final long maxWaitNanos;
+    
+    private double concurrencyLimit;
+    private int inFlight;
+    private long blockedUntil;
+    private long shedCount;
+    
+    // A per-minute limit of 0 disables that bucket
+    public ProviderRateLimiter(String provider, long requestsPerMinute, long tokensPerMinute, 
+                               int initialConcurrency, int minConcurrency, int maxConcurrency, long maxWaitMs) {
+        long now = System.nanoTime();
+        this.provider = provider;
+        this.requestBucket = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute, now) : null;
+        this.tokenBucket = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute, now) : null;
+        this.minConcurrency = Math.max(1, minConcurrency);
+        this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+        this.concurrencyLimit = Math.max(this.minConcurrency, Math.min(initialConcurrency, this.maxConcurrency));
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.blockedUntil = now;
+    }
+    
+    public <T> T call(long cost, Callable<T> call) throws Exception {
+        acquire(cost);
+        T result;
+        try {
+            result = call.call();
+        } catch (Exception e) {
+            release(e);
+            RateLimitExceededException rejected = asShed(e);
+            throw rejected != null ? rejected : e;
+        }
+        release(null);
+        return result;
+    }
+    
+    public <T> Mono<T> callReactive(long cost, Supplier<Mono<T>> call) {
+        // Waiting for capacity blocks, so only a call that has to wait leaves the caller's thread
+        Mono<Boolean> permit = Mono.defer(() -> tryAcquire(cost) 
+            ? Mono.just(Boolean.TRUE) 
+            : Mono.fromCallable(() -> {
+                acquire(cost);
+                return Boolean.TRUE;
+            }).subscribeOn(Schedulers.boundedElastic()));
+        
+        // Deferred so a supplier that throws while building its request still returns the permit
+        return permit.flatMap(acquired -> Mono.defer(call)
+            .doOnSuccess(result -> release(null))
+            .doOnError(this::release)
+            .onErrorMap(e -> {
+                RateLimitExceededException rejected = asShed(e);
+                return rejected != null ? rejected : e;
+            })
+            .doOnCancel(this::releaseCancelled));
+    }
+    
+    public synchronized boolean tryAcquire(long cost) {
+        long now = System.nanoTime();
+        if (waitNanos(cost, now) > 0 || isConcurrencyFull()) {
+            return false;
+        }
+        take(cost, now);
+        return true;
+    }
+    
+    public synchronized void acquire(long cost) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (true) {
+            long now = System.nanoTime();
+            long wait = waitNanos(cost, now);
+            boolean concurrencyFull = isConcurrencyFull();
+            if (wait == 0 && !concurrencyFull) {
+                take(cost, now);
+                return;
+            }
+            
+            long remaining = deadline - now;
+            if (remaining <= 0 || wait > remaining) {
+                shedCount++;
+                long retryAfter = Math.max(wait, concurrencyFull ? DEFAULT_RETRY_NANOS : 0);
+                throw new RateLimitExceededException(provider, TimeUnit.NANOSECONDS.toMillis(retryAfter));
+            }
+            
+            // Woken early by release() when a concurrency slot frees up
+            TimeUnit.NANOSECONDS.timedWait(this, wait > 0 ? wait : remaining);
+        }
+    }
+    
+    private synchronized void release(Throwable error) {
+        inFlight--;
+        
+        long retryAfterMs = error == null ? OverloadSignals.NOT_OVERLOADED : OverloadSignals.retryAfterMs(error);
+        if (error == null) {
+            // Additive increase: about one extra slot per limit-many successful calls
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+        } else if (retryAfterMs != OverloadSignals.NOT_OVERLOADED) {
+            // Multiplicative decrease on 429/503 or timeouts, and no calls at all until Retry-After has passed
+            concurrencyLimit = Math.max(minConcurrency, concurrencyLimit / 2);
+            if (retryAfterMs > 0) {
+                long now = System.nanoTime();
+                blockedUntil = Math.max(blockedUntil - now, TimeUnit.MILLISECONDS.toNanos(retryAfterMs)) + now;
+            }
+            logger.warn("Provider '{}' signalled overload, concurrency limit now {}, retry after {} ms", 
+                        provider, (int) concurrencyLimit, retryAfterMs);
+        }
+        notifyAll();
+    }
+    
+    // A 429 or 503 from the provider means the same as a local shed: come back later. Callers get it as one,
+    // rather than as a provider failure that ends in a placeholder image.
+    private RateLimitExceededException asShed(Throwable error) {
+        long retryAfterMs = OverloadSignals.rejectionRetryAfterMs(error);
+        if (retryAfterMs == OverloadSignals.NOT_OVERLOADED) {
+            return null;
+        }
+        return new RateLimitExceededException(provider, 
+                                              retryAfterMs > 0 ? retryAfterMs : TimeUnit.NANOSECONDS.toMillis(DEFAULT_RETRY_NANOS), 
+                                              error);
+    }
+    
+    private synchronized void releaseCancelled() {
+        inFlight--;
+        notifyAll();
+    }
+    
+    private long waitNanos(long cost, long now) {
+        long wait = Math.max(blockedUntil - now, 0);
+        if (requestBucket != null) {
+            wait = Math.max(wait, requestBucket.nanosUntilAvailable(1, now));
+        }
+        if (tokenBucket != null && cost > 0) {
+            wait = Math.max(wait, tokenBucket.nanosUntilAvailable(cost, now));
+        }
+        return wait;
+    }
+    
+    private boolean isConcurrencyFull() {
+        return inFlight >= (int) concurrencyLimit;
+    }
+    
+    private void take(long cost, long now) {
+        if (requestBucket != null) {
+            requestBucket.take(1, now);
+        }
+        if (tokenBucket != null && cost > 0) {
+            tokenBucket.take(cost, now);
+        }
+        inFlight++;
+    }
+    
+    public String getProvider() { return provider; }
+    public synchronized double getConcurrencyLimit() { return concurrencyLimit; }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized long getShedCount() { return shedCount; }
+}
@@ -0,0 +1,49 @@
+package com.room.decorator.ratelimit;
+
+// Thrown when a provider call cannot get rate-limit capacity in time, or the provider itself answered 429 or 503;
+// the request is shed instead of being sent to a provider that would reject it anyway
+public class RateLimitExceededException extends RuntimeException {
+    
+    private final String provider;
+    private final long retryAfterMs;
+    
+    public RateLimitExceededException(String provider, long retryAfterMs) {
+        super("Rate limit for " + provider + " exhausted, retry after " + Math.max(1, retryAfterMs / 1000) + "s");
+        this.provider = provider;
+        this.retryAfterMs = retryAfterMs;
+    }
+    
+    public RateLimitExceededException(String provider, long retryAfterMs, Throwable cause) {
+        this(provider, retryAfterMs);
+        initCause(cause);
+    }
+    
+    public String getProvider() { return provider; }
+    public long getRetryAfterMs() { return retryAfterMs; }
+    
+    // The shed signal may arrive wrapped (CompletionException, failover or hedging composites); null when absent
+    public static RateLimitExceededException find(Throwable error) {
+        return find(error, 0);
+    }
+    
+    private static RateLimitExceededException find(Throwable error, int depth) {
+        if (error == null || depth > 8) {
+            return null;
+        }
+        if (error instanceof RateLimitExceededException) {
+            return (RateLimitExceededException) error;
+        }
+        for (Throwable suppressed : error.getSuppressed()) {
+            RateLimitExceededException found = find(suppressed, depth + 1);
+            if (found != null) {
+                return found;
+            }
+        }
+        return find(error.getCause(), depth + 1);
+    }
+    
+    // Whole seconds, rounded up, as used in a Retry-After header
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfterMs + 999) / 1000);
+    }
+}
@@ -0,0 +1,67 @@
+package com.room.decorator.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One rate limiter per provider and API key, since quotas belong to the key (organisation), not to this app.
+// Limits come from app.rate-limit.<provider>.* and default to unlimited buckets with adaptive concurrency.
+@Component
+public class RateLimiterRegistry {
+    
+    @Value("${app.rate-limit.enabled:true}")
+    private boolean enabled;
+    
+    // How long a call may wait for capacity before it is shed
+    @Value("${app.rate-limit.max-wait-ms:10000}")
+    private long maxWaitMs;
+    
+    @Autowired
+    private Environment environment;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private final ConcurrentHashMap<String, ProviderRateLimiter> limiters = new ConcurrentHashMap<>();
+    
+    public ProviderRateLimiter forProvider(String provider, String apiKey) {
+        // Keys are fingerprinted so they never end up in heap dumps of the map or in logs
+        String key = provider + ':' + DigestUtils.md5DigestAsHex(String.valueOf(apiKey).getBytes(StandardCharsets.UTF_8));
+        return limiters.computeIfAbsent(key, k -> create(provider));
+    }
+    
+    private ProviderRateLimiter create(String provider) {
+        String prefix = "app.rate-limit." + provider + ".";
+        ProviderRateLimiter limiter = enabled 
+            ? new ProviderRateLimiter(provider,
+                                      environment.getProperty(prefix + "rpm", Long.class, 0L),
+                                      environment.getProperty(prefix + "tpm", Long.class, 0L),
+                                      environment.getProperty(prefix + "initial-concurrency", Integer.class, 8),
+                                      environment.getProperty(prefix + "min-concurrency", Integer.class, 1),
+                                      environment.getProperty(prefix + "max-concurrency", Integer.class, 32),
+                                      environment.getProperty(prefix + "max-wait-ms", Long.class, maxWaitMs))
+            : new ProviderRateLimiter(provider, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, maxWaitMs);
+        
+        Gauge.builder("ai.ratelimit.concurrency.limit", limiter, ProviderRateLimiter::getConcurrencyLimit)
+            .description("Current adaptive concurrency limit towards the provider")
+            .tag("provider", provider)
+            .register(meterRegistry);
+        Gauge.builder("ai.ratelimit.in.flight", limiter, ProviderRateLimiter::getInFlight)
+            .description("Provider calls currently holding a rate-limit permit")
+            .tag("provider", provider)
+            .register(meterRegistry);
+        FunctionCounter.builder("ai.ratelimit.shed", limiter, ProviderRateLimiter::getShedCount)
+            .description("Provider calls shed because no rate-limit capacity was available in time")
+            .tag("provider", provider)
+            .register(meterRegistry);
+        return limiter;
+    }
+}
@@ -0,0 +1,36 @@
+package com.room.decorator.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+// Classic token bucket refilled continuously at a per-minute rate; not thread-safe, guarded by its owner
+class TokenBucket {
+    
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+    
+    TokenBucket(long perMinute, long now) {
+        this.capacity = perMinute;
+        this.tokensPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.tokens = perMinute;
+        this.lastRefill = now;
+    }
+    
+    // Nanoseconds until the cost can be taken; costs above the capacity are clamped so they can ever succeed
+    long nanosUntilAvailable(long cost, long now) {
+        refill(now);
+        double needed = Math.min(cost, capacity) - tokens;
+        return needed <= 0 ? 0 : (long) Math.ceil(needed / tokensPerNano);
+    }
+    
+    void take(long cost, long now) {
+        refill(now);
+        tokens -= Math.min(cost, capacity);
+    }
+    
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
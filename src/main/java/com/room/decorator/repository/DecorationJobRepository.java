@@ -0,0 +1,52 @@
+package com.room.decorator.repository;
+
+import com.room.decorator.model.DecorationJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface DecorationJobRepository extends JpaRepository<DecorationJob, String> {
+    
+    // Ids only, so polling the queue does not pull the uploaded images into memory. Jobs backing off
+    // until a later notBefore are left where they are.
+    @Query("select j.id from DecorationJob j where j.status = :status " 
+           + "and (j.notBefore is null or j.notBefore <= :now) order by j.createdAt")
+    List<String> findReadyIds(@Param("status") DecorationJob.Status status, 
+                              @Param("now") Instant now, 
+                              Pageable pageable);
+    
+    // Compare-and-set on the status so two workers can never claim the same job. The attempt is counted
+    // in the same update, so a run cut short by a restart still counts towards the limit.
+    @Modifying
+    @Transactional
+    @Query("update DecorationJob j set j.status = :to, j.attempts = j.attempts + 1, j.updatedAt = :now " 
+           + "where j.id = :id and j.status = :from")
+    int claim(@Param("id") String id, 
+              @Param("from") DecorationJob.Status from, 
+              @Param("to") DecorationJob.Status to, 
+              @Param("now") Instant now);
+    
+    // Gives up on jobs that have used every attempt, dropping their upload like any other finished job
+    @Modifying
+    @Transactional
+    @Query("update DecorationJob j set j.status = :to, j.errorMessage = :message, j.imageData = null, " 
+           + "j.updatedAt = :now where j.status = :from and j.attempts >= :maxAttempts")
+    int failExhausted(@Param("from") DecorationJob.Status from, 
+                      @Param("to") DecorationJob.Status to, 
+                      @Param("maxAttempts") int maxAttempts, 
+                      @Param("message") String message, 
+                      @Param("now") Instant now);
+    
+    @Modifying
+    @Transactional
+    @Query("update DecorationJob j set j.status = :to, j.updatedAt = :now where j.status = :from")
+    int transitionAll(@Param("from") DecorationJob.Status from, 
+                      @Param("to") DecorationJob.Status to, 
+                      @Param("now") Instant now);
+}
@@ -0,0 +1,136 @@
+package com.room.decorator.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+// Count-based circuit breaker: opens when the failure rate over the last window of calls crosses the threshold,
+// rejects calls while open, and lets a few trial calls through after the open period to decide whether to close
+class CircuitBreaker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    enum State { CLOSED, OPEN, HALF_OPEN }
+    
+    private final String provider;
+    private final boolean[] window;
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    
+    private State state = State.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    
+    CircuitBreaker(String provider, int windowSize, int failureRateThreshold, int minimumCalls, 
+                   long openDurationMs, int halfOpenCalls) {
+        this.provider = provider;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+    
+    // Whether a call would currently be let through, without claiming a trial slot
+    synchronized boolean isCallPermitted() {
+        switch (state) {
+            case OPEN:
+                return System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN:
+                return trialsStarted < halfOpenCalls;
+            default:
+                return true;
+        }
+    }
+    
+    synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+            logger.info("Circuit for provider '{}' half-open, letting {} trial calls through", provider, halfOpenCalls);
+        }
+        
+        switch (state) {
+            case OPEN:
+                return false;
+            case HALF_OPEN:
+                if (trialsStarted >= halfOpenCalls) {
+                    return false;
+                }
+                trialsStarted++;
+                return true;
+            default:
+                return true;
+        }
+    }
+    
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++trialsSucceeded >= halfOpenCalls) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+    
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open("trial call failed");
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+                open(failures + " of the last " + recorded + " calls failed");
+            }
+        }
+    }
+    
+    // A call that ended without saying anything about the provider's health (cancelled, shed locally)
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && trialsStarted > trialsSucceeded) {
+            trialsStarted--;
+        }
+    }
+    
+    synchronized State getState() {
+        return state;
+    }
+    
+    private void record(boolean failed) {
+        if (recorded == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+    
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        logger.warn("Circuit for provider '{}' opened ({}), rejecting calls for {} ms", 
+                    provider, reason, TimeUnit.NANOSECONDS.toMillis(openNanos));
+    }
+    
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        logger.info("Circuit for provider '{}' closed again", provider);
+    }
+}
@@ -0,0 +1,140 @@
+package com.room.decorator.resilience;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Circuit breaker plus bulkhead for one provider. Both reject immediately instead of queueing,
+// so a degraded provider costs callers nothing but the fallback while it recovers.
+public class ProviderGuard {
+    
+    private final String provider;
+    private final CircuitBreaker circuit;
+    private final Semaphore bulkhead;
+    private final long slowCallNanos;
+    
+    private final AtomicLong circuitRejections = new AtomicLong();
+    private final AtomicLong bulkheadRejections = new AtomicLong();
+    
+    // A slow-call threshold of 0 disables counting slow successes as failures
+    ProviderGuard(String provider, CircuitBreaker circuit, int maxConcurrentCalls, long slowCallMs) {
+        this.provider = provider;
+        this.circuit = circuit;
+        this.bulkhead = new Semaphore(Math.max(1, maxConcurrentCalls));
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+    }
+    
+    public <T> T call(Callable<T> call) throws Exception {
+        permit();
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (Exception e) {
+            onError(e);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+    
+    public <T> Mono<T> callReactive(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            permit();
+            long start = System.nanoTime();
+            // Deferred so a supplier that throws while building its request still frees the slot and the trial call
+            return Mono.defer(call)
+                .doOnSuccess(result -> onSuccess(System.nanoTime() - start))
+                .doOnError(this::onError)
+                .doOnCancel(circuit::onIgnored)
+                .doFinally(signal -> bulkhead.release());
+        });
+    }
+    
+    // Lets routing skip a provider whose circuit is open before trying it
+    public boolean isCallPermitted() {
+        return circuit.isCallPermitted();
+    }
+    
+    private void permit() {
+        if (!circuit.tryAcquirePermission()) {
+            circuitRejections.incrementAndGet();
+            throw new ProviderUnavailableException(provider, "circuit open");
+        }
+        if (!bulkhead.tryAcquire()) {
+            circuit.onIgnored();
+            bulkheadRejections.incrementAndGet();
+            throw new ProviderUnavailableException(provider, "too many concurrent calls");
+        }
+    }
+    
+    private void onSuccess(long durationNanos) {
+        if (slowCallNanos > 0 && durationNanos > slowCallNanos) {
+            circuit.onFailure();
+        } else {
+            circuit.onSuccess();
+        }
+    }
+    
+    private void onError(Throwable error) {
+        if (isProviderFailure(error)) {
+            circuit.onFailure();
+        } else if (isClientError(error)) {
+            // The provider answered; a rejected prompt says nothing against its health
+            circuit.onSuccess();
+        } else {
+            circuit.onIgnored();
+        }
+    }
+    
+    // Only trouble on the provider's side counts against it: timeouts, 5xx answers and IO or connect errors.
+    // Anything else (a response we failed to parse, a bug of ours, a call shed locally) says nothing about its health.
+    private static boolean isProviderFailure(Throwable error) {
+        int status = statusOf(error);
+        if (status != 0) {
+            return status >= 500 || status == 408;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonProcessingException) {
+                return false;
+            }
+            if (cause instanceof TimeoutException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isClientError(Throwable error) {
+        int status = statusOf(error);
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+    
+    private static int statusOf(Throwable error) {
+        if (error instanceof WebClientResponseException) {
+            return ((WebClientResponseException) error).getStatusCode().value();
+        }
+        if (error instanceof HttpStatusCodeException) {
+            return ((HttpStatusCodeException) error).getStatusCode().value();
+        }
+        return 0;
+    }
+    
+    public String getProvider() { return provider; }
+    
+    // 0 closed, 1 open, 2 half-open, for the state gauge
+    public int getCircuitState() { return circuit.getState().ordinal(); }
+    public int getAvailableConcurrency() { return bulkhead.availablePermits(); }
+    public long getCircuitRejections() { return circuitRejections.get(); }
+    public long getBulkheadRejections() { return bulkheadRejections.get(); }
+}
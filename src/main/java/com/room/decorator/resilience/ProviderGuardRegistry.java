@@ -0,0 +1,89 @@
+package com.room.decorator.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// One circuit breaker and bulkhead per provider, since an outage affects every key alike.
+// Settings come from app.resilience.<provider>.* and fall back to the app.resilience.* defaults.
+@Component
+public class ProviderGuardRegistry {
+    
+    @Value("${app.resilience.enabled:true}")
+    private boolean enabled;
+    
+    // Open the circuit when at least this percentage of the last window-size calls failed
+    @Value("${app.resilience.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+    
+    @Value("${app.resilience.window-size:20}")
+    private int windowSize;
+    
+    @Value("${app.resilience.minimum-calls:10}")
+    private int minimumCalls;
+    
+    @Value("${app.resilience.open-duration-ms:30000}")
+    private long openDurationMs;
+    
+    @Value("${app.resilience.half-open-calls:2}")
+    private int halfOpenCalls;
+    
+    // Successful calls slower than this count as failures; 0 disables
+    @Value("${app.resilience.slow-call-ms:0}")
+    private long slowCallMs;
+    
+    @Value("${app.resilience.max-concurrent-calls:16}")
+    private int maxConcurrentCalls;
+    
+    @Autowired
+    private Environment environment;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private final ConcurrentHashMap<String, ProviderGuard> guards = new ConcurrentHashMap<>();
+    
+    public ProviderGuard forProvider(String provider) {
+        return guards.computeIfAbsent(provider, this::create);
+    }
+    
+    private ProviderGuard create(String provider) {
+        String prefix = "app.resilience." + provider + ".";
+        // Disabled guards never open (a threshold above 100% cannot be reached) and never fill up
+        CircuitBreaker circuit = new CircuitBreaker(provider,
+            environment.getProperty(prefix + "window-size", Integer.class, windowSize),
+            enabled ? environment.getProperty(prefix + "failure-rate-threshold", Integer.class, failureRateThreshold) : 101,
+            environment.getProperty(prefix + "minimum-calls", Integer.class, minimumCalls),
+            environment.getProperty(prefix + "open-duration-ms", Long.class, openDurationMs),
+            environment.getProperty(prefix + "half-open-calls", Integer.class, halfOpenCalls));
+        ProviderGuard guard = new ProviderGuard(provider, circuit,
+            enabled ? environment.getProperty(prefix + "max-concurrent-calls", Integer.class, maxConcurrentCalls) : Integer.MAX_VALUE,
+            enabled ? environment.getProperty(prefix + "slow-call-ms", Long.class, slowCallMs) : 0);
+        
+        Gauge.builder("ai.circuit.state", guard, ProviderGuard::getCircuitState)
+            .description("Circuit state towards the provider (0 closed, 1 open, 2 half-open)")
+            .tag("provider", provider)
+            .register(meterRegistry);
+        Gauge.builder("ai.bulkhead.available", guard, ProviderGuard::getAvailableConcurrency)
+            .description("Concurrent provider calls still allowed by the bulkhead")
+            .tag("provider", provider)
+            .register(meterRegistry);
+        FunctionCounter.builder("ai.provider.rejected", guard, ProviderGuard::getCircuitRejections)
+            .description("Provider calls rejected without being made")
+            .tag("provider", provider)
+            .tag("reason", "circuit_open")
+            .register(meterRegistry);
+        FunctionCounter.builder("ai.provider.rejected", guard, ProviderGuard::getBulkheadRejections)
+            .description("Provider calls rejected without being made")
+            .tag("provider", provider)
+            .tag("reason", "bulkhead_full")
+            .register(meterRegistry);
+        return guard;
+    }
+}
@@ -0,0 +1,15 @@
+package com.room.decorator.resilience;
+
+// Thrown without calling the provider when its circuit is open or its bulkhead is full;
+// callers fall back to their degraded result straight away
+public class ProviderUnavailableException extends RuntimeException {
+    
+    private final String provider;
+    
+    public ProviderUnavailableException(String provider, String reason) {
+        super("Provider " + provider + " unavailable: " + reason);
+        this.provider = provider;
+    }
+    
+    public String getProvider() { return provider; }
+}
@@ -1,220 +1,676 @@
 package com.room.decorator.service;
 
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.room.decorator.model.DecoratedRoomOption;
-import com.room.decorator.model.DecorationRequest;
-import com.room.decorator.model.DesignStyle;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-
-import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.room.decorator.generation.HedgeBudget;
+import com.room.decorator.generation.ImageGenerationRouter;
+import com.room.decorator.image.ImageBuffer;
 import com.room.decorator.model.DecoratedRoomOption;
 import com.room.decorator.model.DecorationRequest;
 import com.room.decorator.model.DesignStyle;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.RateLimitExceededException;
+import com.room.decorator.storage.ImageStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @Service
 public class AIDecorationService {
     
     private static final Logger logger = LoggerFactory.getLogger(AIDecorationService.class);
     
-    @Value("${openai.api.key}")
-    private String openAiApiKey;
+    private static final String IMAGE_URL_PREFIX = "/api/room-decorator/images/";
     
-    @Value("${stability.api.key:}")
-    private String stabilityApiKey;
+    // 1x1 PNG used when generation fails
+    private static final byte[] PLACEHOLDER_IMAGE = Base64.getDecoder().decode(
+        "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==");
     
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
     private final ExecutorService executorService;
     
-    public AIDecorationService() {
-        this.restTemplate = new RestTemplate();
-        this.objectMapper = new ObjectMapper();
-        this.executorService = Executors.newFixedThreadPool(3);
+    @Autowired
+    private ImageGenerationRouter imageGenerationRouter;
+    
+    @Value("${app.decoration.generation-timeout-ms:120000}")
+    private long generationTimeoutMs;
+    
+    // Speculative variations re-issued when the complete analysis changes their room type, lighting or colour
+    // scheme; the rest keep their speculative render. A replaced call is not aborted, so each re-issue can cost a
+    // second paid generation.
+    @Value("${app.decoration.speculative-max-reissues:3}")
+    private int speculativeMaxReissues;
+    
+    // Request all variations as samples of one shared prompt, in as few provider calls as possible
+    @Value("${app.generation.batching.enabled:false}")
+    private boolean batchingEnabled;
+    
+    @Autowired
+    private ImageStore imageStore;
+    
+    @Autowired
+    private RenderCache renderCache;
+    
+    @Autowired
+    private PipelineObservations observations;
+    
+    // Also embed the image as base64 in each option, for clients that cannot follow image URLs yet
+    @Value("${app.image-store.inline-base64:false}")
+    private boolean inlineBase64;
+    
+    public AIDecorationService(@Qualifier("decorationExecutor") ExecutorService executorService) {
+        this.executorService = executorService;
     }
     
     public List<DecoratedRoomOption> generateDecorationOptions(
-            byte[] originalImage, 
+            ImageBuffer originalImage, 
             DecorationRequest request, 
             ImageAnalysisService.RoomAnalysis roomAnalysis) {
         
+        if (isGenerationUnavailable()) {
+            return generateFallbackOptions(request);
+        }
+        
         try {
-            List<CompletableFuture<DecoratedRoomOption>> futures = new ArrayList<>();
+            List<CompletableFuture<DecoratedRoomOption>> futures = 
+                startDecorationOptions(originalImage, request, roomAnalysis, imageGenerationRouter.newHedgeBudget());
             
-            // Generate 3 different variations of the chosen style
-            for (int i = 0; i < 3; i++) {
-                final int variation = i + 1;
-                CompletableFuture<DecoratedRoomOption> future = CompletableFuture.supplyAsync(() -> 
-                    generateSingleOption(originalImage, request, roomAnalysis, variation), 
-                    executorService
-                );
-                futures.add(future);
+            return awaitDecorationOptions(futures, request);
+            
+        } catch (RateLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error in decoration generation", e);
+            return generateFallbackOptions(request);
+        }
+    }
+    
+    public List<DecoratedRoomOption> generateDecorationOptionsSpeculatively(
+            ImageBuffer originalImage, 
+            DecorationRequest request, 
+            ImageAnalysisService.PendingAnalysis pendingAnalysis) {
+        
+        if (isGenerationUnavailable()) {
+            return generateFallbackOptions(request);
+        }
+        
+        try {
+            ImageAnalysisService.RoomAnalysis provisional = withRequestedRoomType(pendingAnalysis.awaitProvisional(), request);
+            if (pendingAnalysis.getProvisional().isCompletedExceptionally()) {
+                // Without the local stages there is nothing to speculate on; the complete analysis rests on Vision alone
+                return generateDecorationOptions(originalImage, request, 
+                                                 withRequestedRoomType(pendingAnalysis.awaitComplete(), request));
             }
             
-            // Wait for all generations to complete
-            List<DecoratedRoomOption> options = new ArrayList<>();
-            for (CompletableFuture<DecoratedRoomOption> future : futures) {
-                try {
-                    DecoratedRoomOption option = future.get();
-                    if (option != null) {
-                        options.add(option);
-                    }
-                } catch (Exception e) {
-                    logger.error("Error generating decoration option", e);
+            // Start generating while the Vision call is still in flight, from a prompt built only from what is known
+            // before it answers: the CV lighting, colours and elements plus the request fields
+            HedgeBudget hedgeBudget = imageGenerationRouter.newHedgeBudget();
+            List<CompletableFuture<DecoratedRoomOption>> futures = 
+                startDecorationOptions(originalImage, request, provisional, hedgeBudget);
+            
+            // Vision's furniture and palette only add detail to a speculative render; it is re-issued only when
+            // Vision disagrees on what the prompt is about
+            ImageAnalysisService.RoomAnalysis complete = withRequestedRoomType(pendingAnalysis.awaitComplete(), request);
+            if (!changesPromptMaterially(provisional, complete)) {
+                return awaitDecorationOptions(futures, request);
+            }
+            
+            if (batchingEnabled) {
+                // All variations share one prompt and one provider call, so they are kept or re-issued together
+                if (speculativeMaxReissues > 0) {
+                    logger.info("Room analysis changed the batch prompt, re-issuing generation");
+                    futures.forEach(future -> future.cancel(true));
+                    futures = startDecorationOptions(originalImage, request, complete, hedgeBudget);
                 }
+                return awaitDecorationOptions(futures, request);
             }
             
-            return options.isEmpty() ? generateFallbackOptions(request) : options;
+            for (int i = 0; i < Math.min(speculativeMaxReissues, futures.size()); i++) {
+                int variation = i + 1;
+                logger.info("Room analysis changed the prompt for variation {}, re-issuing generation", variation);
+                // Cancelling does not interrupt a provider call already in flight; its result is discarded
+                futures.get(i).cancel(true);
+                futures.set(i, startSingleOption(originalImage, request, complete, variation, hedgeBudget));
+            }
             
+            return awaitDecorationOptions(futures, request);
+            
+        } catch (RateLimitExceededException e) {
+            throw e;
         } catch (Exception e) {
-            logger.error("Error in decoration generation", e);
+            logger.error("Error in speculative decoration generation", e);
             return generateFallbackOptions(request);
         }
     }
     
+    public Mono<List<DecoratedRoomOption>> generateDecorationOptionsReactive(
+            ImageBuffer originalImage, 
+            DecorationRequest request, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis) {
+        
+        if (isGenerationUnavailable()) {
+            return Mono.fromCallable(() -> generateFallbackOptions(request)).subscribeOn(Schedulers.boundedElastic());
+        }
+        
+        Mono<List<DecoratedRoomOption>> options;
+        if (batchingEnabled) {
+            options = generateBatchedOptionsReactive(originalImage, request, roomAnalysis);
+        } else {
+            // Generate 3 different variations of the chosen style, keeping variation order
+            HedgeBudget hedgeBudget = imageGenerationRouter.newHedgeBudget();
+            AtomicReference<RateLimitExceededException> shed = new AtomicReference<>();
+            options = Flux.range(1, 3)
+                .flatMapSequential(variation -> 
+                    generateSingleOptionReactive(originalImage, request, roomAnalysis, variation, hedgeBudget)
+                        .onErrorResume(RateLimitExceededException.class, e -> {
+                            shed.set(e);
+                            return Mono.empty();
+                        }))
+                .collectList()
+                // Partial results are still returned; only a request with nothing to show is shed
+                .flatMap(generated -> generated.isEmpty() && shed.get() != null 
+                    ? Mono.error(shed.get()) : Mono.just(generated));
+        }
+        
+        return options
+            .map(generated -> generated.isEmpty() ? generateFallbackOptions(request) : generated)
+            .onErrorResume(e -> !(e instanceof RateLimitExceededException), e -> {
+                logger.error("Error in reactive decoration generation", e);
+                return Mono.just(generateFallbackOptions(request));
+            });
+    }
+    
+    public CompletableFuture<List<DecoratedRoomOption>> streamDecorationOptions(
+            ImageBuffer originalImage, 
+            DecorationRequest request, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            Consumer<DecoratedRoomOption> onOption) {
+        
+        if (isGenerationUnavailable()) {
+            List<DecoratedRoomOption> fallbackOptions = generateFallbackOptions(request);
+            fallbackOptions.forEach(onOption);
+            return CompletableFuture.completedFuture(fallbackOptions);
+        }
+        
+        // Options are handed to the consumer in completion order, not variation order
+        List<DecoratedRoomOption> delivered = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+        AtomicReference<RateLimitExceededException> shed = new AtomicReference<>();
+        
+        HedgeBudget hedgeBudget = imageGenerationRouter.newHedgeBudget();
+        for (CompletableFuture<DecoratedRoomOption> future : startDecorationOptions(originalImage, request, roomAnalysis, hedgeBudget)) {
+            deliveries.add(future.thenAccept(option -> {
+                if (option != null) {
+                    delivered.add(option);
+                    onOption.accept(option);
+                }
+            }).exceptionally(e -> {
+                RateLimitExceededException limited = RateLimitExceededException.find(e);
+                if (limited != null) {
+                    shed.set(limited);
+                } else {
+                    logger.error("Error generating decoration option", e);
+                }
+                return null;
+            }));
+        }
+        
+        return CompletableFuture.allOf(deliveries.toArray(new CompletableFuture[0])).thenApply(done -> {
+            if (delivered.isEmpty() && shed.get() != null) {
+                throw shed.get();
+            }
+            if (delivered.isEmpty()) {
+                List<DecoratedRoomOption> fallbackOptions = generateFallbackOptions(request);
+                fallbackOptions.forEach(onOption);
+                return fallbackOptions;
+            }
+            return new ArrayList<>(delivered);
+        });
+    }
+    
+    private static ImageAnalysisService.RoomAnalysis withRequestedRoomType(
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            DecorationRequest request) {
+        
+        if (request.getRoomType() != null && !request.getRoomType().isEmpty()) {
+            return roomAnalysis.withRoomType(request.getRoomType());
+        }
+        return roomAnalysis;
+    }
+    
+    // The prompt fields the local stages can get wrong on their own
+    private static boolean changesPromptMaterially(
+            ImageAnalysisService.RoomAnalysis provisional, 
+            ImageAnalysisService.RoomAnalysis complete) {
+        
+        return !provisional.getRoomType().equalsIgnoreCase(complete.getRoomType())
+            || !provisional.getLighting().equalsIgnoreCase(complete.getLighting())
+            || !provisional.getColorScheme().equalsIgnoreCase(complete.getColorScheme());
+    }
+    
+    private boolean isGenerationUnavailable() {
+        // Every provider's circuit is open: answer with the degraded options now instead of waiting on doomed calls
+        if (imageGenerationRouter.isUnavailable()) {
+            logger.warn("Image generation providers unavailable, returning fallback options");
+            return true;
+        }
+        return false;
+    }
+    
+    private List<CompletableFuture<DecoratedRoomOption>> startDecorationOptions(
+            ImageBuffer originalImage, 
+            DecorationRequest request, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            HedgeBudget hedgeBudget) {
+        
+        if (batchingEnabled) {
+            return startBatchedOptions(originalImage, request, roomAnalysis);
+        }
+        
+        List<CompletableFuture<DecoratedRoomOption>> futures = new ArrayList<>();
+        
+        // Generate 3 different variations of the chosen style
+        for (int i = 0; i < 3; i++) {
+            futures.add(startSingleOption(originalImage, request, roomAnalysis, i + 1, hedgeBudget));
+        }
+        
+        return futures;
+    }
+    
+    private CompletableFuture<DecoratedRoomOption> startSingleOption(
+            ImageBuffer originalImage, 
+            DecorationRequest request, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            int variation, 
+            HedgeBudget hedgeBudget) {
+        
+        try {
+            return CompletableFuture.supplyAsync(() -> 
+                generateSingleOption(originalImage, request, roomAnalysis, variation, hedgeBudget), 
+                executorService
+            );
+        } catch (RejectedExecutionException e) {
+            // The pool is shutting down; the caller sees a failed option rather than a missing one
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    private List<CompletableFuture<DecoratedRoomOption>> startBatchedOptions(
+            ImageBuffer originalImage, 
+            DecorationRequest request, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis) {
+        
+        // One call produces every sample. It is subscribed here rather than run on a pool thread, so cancelling it
+        // cancels the provider call itself
+        CompletableFuture<List<DecoratedRoomOption>> batch = 
+            generateBatchedOptionsReactive(originalImage, request, roomAnalysis).toFuture();
+        
+        // Fan the samples back out, one option per variation; the batch is cancelled once every variation is
+        AtomicInteger remaining = new AtomicInteger(3);
+        List<CompletableFuture<DecoratedRoomOption>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int index = i;
+            CompletableFuture<DecoratedRoomOption> option = batch.thenApply(options -> options.get(index));
+            option.whenComplete((result, error) -> {
+                if (option.isCancelled() && remaining.decrementAndGet() == 0) {
+                    batch.cancel(true);
+                }
+            });
+            futures.add(option);
+        }
+        
+        return futures;
+    }
+    
+    private Mono<List<DecoratedRoomOption>> generateBatchedOptionsReactive(
+            ImageBuffer originalImage, 
+            DecorationRequest request, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis) {
+        
+        DesignStyle style = DesignStyle.fromString(request.getDesignStyle());
+        String prompt = createDecorationPrompt(style, roomAnalysis, request, 0);
+        
+        Mono<List<DecoratedRoomOption>> generated = observations.stage("generation").style(style.name()).variation(0)
+            .observeReactive(() -> imageGenerationRouter.generateBatchReactive(originalImage, prompt, 3))
+            .map(images -> padImages(images, 3))
+            .onErrorMap(e -> RateLimitExceededException.find(e) != null, RateLimitExceededException::find)
+            .onErrorResume(e -> !(e instanceof RateLimitExceededException), e -> {
+                logger.error("Error generating decorated images", e);
+                return Mono.just(padImages(new ArrayList<>(), 3));
+            })
+            // Writing to the image store is blocking file IO, so keep it off the event loop
+            .publishOn(Schedulers.boundedElastic())
+            .map(images -> buildBatchOptions(style, roomAnalysis, request, images));
+        
+        if (!request.isReuseCachedRenders()) {
+            return generated;
+        }
+        return Mono.fromCallable(() -> findCachedBatch(style, roomAnalysis, request))
+            .subscribeOn(Schedulers.boundedElastic())
+            .switchIfEmpty(generated);
+    }
+    
+    private List<DecoratedRoomOption> buildBatchOptions(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            DecorationRequest request, 
+            List<byte[]> images) {
+        
+        List<DecoratedRoomOption> options = new ArrayList<>();
+        for (int variation = 1; variation <= 3; variation++) {
+            byte[] image = images.get(variation - 1);
+            DecoratedRoomOption option = buildOption(style, roomAnalysis, variation, image);
+            cacheRender(renderKey(style, roomAnalysis, request, "sample-" + variation), image, option);
+            options.add(option);
+        }
+        return options;
+    }
+    
+    private List<DecoratedRoomOption> findCachedBatch(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            DecorationRequest request) {
+        
+        if (!request.isReuseCachedRenders()) {
+            return null;
+        }
+        
+        List<DecoratedRoomOption> options = new ArrayList<>();
+        for (int variation = 1; variation <= 3; variation++) {
+            DecoratedRoomOption cached = findCachedOption(style, roomAnalysis, variation, 
+                                                          renderKey(style, roomAnalysis, request, "sample-" + variation));
+            if (cached == null) {
+                return null;
+            }
+            options.add(cached);
+        }
+        return options;
+    }
+    
+    private List<DecoratedRoomOption> awaitDecorationOptions(
+            List<CompletableFuture<DecoratedRoomOption>> futures, 
+            DecorationRequest request) {
+        
+        // Wait for all generations, but never past one shared deadline for the whole set
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(generationTimeoutMs);
+        List<DecoratedRoomOption> options = new ArrayList<>();
+        RateLimitExceededException shed = null;
+        for (CompletableFuture<DecoratedRoomOption> future : futures) {
+            try {
+                DecoratedRoomOption option = future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                if (option != null) {
+                    options.add(option);
+                }
+            } catch (TimeoutException e) {
+                logger.warn("Decoration option not ready within {} ms, dropping it", generationTimeoutMs);
+                future.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+            } catch (Exception e) {
+                RateLimitExceededException limited = RateLimitExceededException.find(e);
+                if (limited != null) {
+                    shed = limited;
+                } else {
+                    logger.error("Error generating decoration option", e);
+                }
+            }
+        }
+        
+        // Partial results are still returned; only a request with nothing to show is shed
+        if (options.isEmpty() && shed != null) {
+            throw shed;
+        }
+        return options.isEmpty() ? generateFallbackOptions(request) : options;
+    }
+    
     private DecoratedRoomOption generateSingleOption(
-            byte[] originalImage, 
+            ImageBuffer originalImage, 
             DecorationRequest request, 
             ImageAnalysisService.RoomAnalysis roomAnalysis, 
-            int variation) {
+            int variation, 
+            HedgeBudget hedgeBudget) {
         
         try {
             DesignStyle style = DesignStyle.fromString(request.getDesignStyle());
             
+            // Users who opted in get an earlier render of the same prompt inputs instead of a new generation
+            String renderKey = renderKey(style, roomAnalysis, request, "variation-" + variation);
+            if (request.isReuseCachedRenders()) {
+                DecoratedRoomOption cached = findCachedOption(style, roomAnalysis, variation, renderKey);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            
             // Create prompt for image generation
             String prompt = createDecorationPrompt(style, roomAnalysis, request, variation);
             
             // Generate image using DALL-E or Stable Diffusion
-            String generatedImageBase64 = generateDecoratedImage(originalImage, prompt);
+            byte[] generatedImage = observations.stage("generation").style(style.name()).variation(variation)
+                .observe(() -> generateDecoratedImage(originalImage, prompt, hedgeBudget));
             
-            // Generate description and element lists
-            String description = generateDescription(style, roomAnalysis, variation);
-            List<String> addedElements = generateAddedElements(style, roomAnalysis, variation);
-            List<String> modifiedElements = generateModifiedElements(roomAnalysis, variation);
-            
-            return new DecoratedRoomOption(
-                UUID.randomUUID().toString(),
-                style.getDisplayName(),
-                generatedImageBase64,
-                description,
-                addedElements,
-                modifiedElements,
-                0.85 + (Math.random() * 0.15) // Random confidence between 0.85-1.0
-            );
+            DecoratedRoomOption option = buildOption(style, roomAnalysis, variation, generatedImage);
+            cacheRender(renderKey, generatedImage, option);
+            return option;
             
+        } catch (RateLimitExceededException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating single decoration option", e);
             return null;
         }
     }
     
-    private String createDecorationPrompt(
-            DesignStyle style, 
-            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+    private Mono<DecoratedRoomOption> generateSingleOptionReactive(
+            ImageBuffer originalImage, 
             DecorationRequest request, 
-            int variation) {
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            int variation, 
+            HedgeBudget hedgeBudget) {
         
-        StringBuilder prompt = new StringBuilder();
-        prompt.append("Interior design makeover of a ").append(roomAnalysis.getRoomType().toLowerCase());
-        prompt.append(" in ").append(style.getDisplayName()).append(" style. ");
-        prompt.append(style.getDescription()).append(". ");
+        DesignStyle style = DesignStyle.fromString(request.getDesignStyle());
+        String prompt = createDecorationPrompt(style, roomAnalysis, request, variation);
+        String renderKey = renderKey(style, roomAnalysis, request, "variation-" + variation);
         
-        // Add existing room context
-        prompt.append("Current room has: ").append(String.join(", ", roomAnalysis.getDetectedElements()));
-        prompt.append(" with ").append(roomAnalysis.getLighting().toLowerCase()).append(" lighting and ");
-        prompt.append(roomAnalysis.getColorScheme().toLowerCase()).append(" color scheme. ");
+        Mono<DecoratedRoomOption> generated = observations.stage("generation").style(style.name()).variation(variation)
+            .observeReactive(() -> generateDecoratedImageReactive(originalImage, prompt, hedgeBudget))
+            // Writing to the image store is blocking file IO, so keep it off the event loop
+            .publishOn(Schedulers.boundedElastic())
+            .map(generatedImage -> {
+                DecoratedRoomOption option = buildOption(style, roomAnalysis, variation, generatedImage);
+                cacheRender(renderKey, generatedImage, option);
+                return option;
+            });
         
-        // Add variation-specific details
-        switch (variation) {
-            case 1:
-                prompt.append("Focus on maintaining existing furniture while adding decorative elements. ");
-                break;
-            case 2:
-                prompt.append("Blend existing furniture with new complementary pieces. ");
-                break;
-            case 3:
-                prompt.append("Bold transformation with creative furniture arrangement. ");
-                break;
+        if (request.isReuseCachedRenders()) {
+            generated = Mono.fromCallable(() -> findCachedOption(style, roomAnalysis, variation, renderKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .switchIfEmpty(generated);
         }
         
-        // Add user preferences
-        if (request.getColorPreference() != null && !request.getColorPreference().isEmpty()) {
-            prompt.append("Incorporate ").append(request.getColorPreference()).append(" colors. ");
+        return generated
+            .onErrorResume(e -> !(e instanceof RateLimitExceededException), e -> {
+                logger.error("Error generating single decoration option", e);
+                return Mono.empty();
+            });
+    }
+    
+    private DecoratedRoomOption buildOption(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            int variation, 
+            byte[] generatedImage) {
+        
+        return attachImage(newOption(style, roomAnalysis, variation), generatedImage);
+    }
+    
+    private DecoratedRoomOption findCachedOption(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            int variation, 
+            String renderKey) {
+        
+        ImageStore.StoredImage cached = renderCache.get(renderKey);
+        if (cached == null) {
+            return null;
         }
         
-        if (request.isPreserveExistingFurniture()) {
-            prompt.append("Preserve and enhance existing furniture. ");
+        logger.debug("Reusing cached render {} for variation {}", cached.getId(), variation);
+        DecoratedRoomOption option = newOption(style, roomAnalysis, variation);
+        option.setImageId(cached.getId());
+        option.setImageUrl(IMAGE_URL_PREFIX + cached.getId());
+        if (inlineBase64) {
+            try (InputStream in = cached.getResource().getInputStream()) {
+                option.setImageBase64(Base64.getEncoder().encodeToString(in.readAllBytes()));
+            } catch (IOException e) {
+                logger.error("Could not read cached render {}", cached.getId(), e);
+                return null;
+            }
+        }
+        return option;
+    }
+    
+    private void cacheRender(String renderKey, byte[] generatedImage, DecoratedRoomOption option) {
+        // Placeholders and renders that only made it into the response inline are not worth reusing
+        if (generatedImage != PLACEHOLDER_IMAGE && option.getImageId() != null) {
+            renderCache.put(renderKey, option.getImageId(), generatedImage.length);
         }
+    }
+    
+    // The inputs that shape a render, normalised so prompts differing only in exact colour values or element counts share a key
+    private String renderKey(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            DecorationRequest request, 
+            String slot) {
         
-        prompt.append("High quality, realistic, well-lit interior photograph.");
+        List<String> elements = new ArrayList<>(new TreeSet<>(roomAnalysis.getDetectedElements()));
+        // The Vision palette goes into the prompt too, so two rooms that differ only in it must not share renders
+        ImageAnalysisService.VisionAnalysis vision = roomAnalysis.getVision();
+        Set<String> palette = new TreeSet<>();
+        if (vision != null) {
+            vision.getPalette().forEach(colour -> palette.add(normalize(colour)));
+        }
+        String fingerprint = String.join("|", 
+            style.name(),
+            normalize(roomAnalysis.getRoomType()),
+            normalize(roomAnalysis.getLighting()),
+            normalize(roomAnalysis.getColorScheme()),
+            normalize(String.join(",", elements)),
+            String.join(",", palette),
+            normalize(request.getColorPreference()),
+            String.valueOf(request.isPreserveExistingFurniture()),
+            slot);
+        return renderCache.keyFor(fingerprint);
+    }
+    
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+    
+    private DecoratedRoomOption newOption(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            int variation) {
+        
+        // Generate description and element lists
+        String description = generateDescription(style, roomAnalysis, variation);
+        List<String> addedElements = generateAddedElements(style, roomAnalysis, variation);
+        List<String> modifiedElements = generateModifiedElements(roomAnalysis, variation);
         
-        return prompt.toString();
+        DecoratedRoomOption option = new DecoratedRoomOption(
+            UUID.randomUUID().toString(),
+            style.getDisplayName(),
+            null,
+            description,
+            addedElements,
+            modifiedElements,
+            0.85 + (Math.random() * 0.15) // Random confidence between 0.85-1.0
+        );
+        return option;
     }
     
-    private String generateDecoratedImage(byte[] originalImage, String prompt) {
+    private DecoratedRoomOption attachImage(DecoratedRoomOption option, byte[] imageBytes) {
         try {
-            // Use DALL-E 3 for image generation
-            String base64Original = Base64.getEncoder().encodeToString(originalImage);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", "dall-e-3");
-            requestBody.put("prompt", prompt);
-            requestBody.put("size", "1024x1024");
-            requestBody.put("quality", "standard");
-            requestBody.put("n", 1);
+            // Written once to the image store; the response only carries a reference
+            String imageId = observations.stage("image.store").observe(() -> imageStore.store(imageBytes));
+            option.setImageId(imageId);
+            option.setImageUrl(IMAGE_URL_PREFIX + imageId);
             
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(openAiApiKey);
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            String response = restTemplate.postForObject(
-                "https://api.openai.com/v1/images/generations", 
-                entity, 
-                String.class
-            );
-            
-            JsonNode jsonResponse = objectMapper.readTree(response);
-            String imageUrl = jsonResponse.path("data").get(0).path("url").asText();
-            
-            // Download the generated image and convert to base64
-            byte[] imageBytes = restTemplate.getForObject(imageUrl, byte[].class);
-            return Base64.getEncoder().encodeToString(imageBytes);
+            if (inlineBase64) {
+                option.setImageBase64(encodeBase64(imageBytes));
+            }
+        } catch (Exception e) {
+            logger.error("Error storing generated image, embedding it in the response instead", e);
+            option.setImageBase64(encodeBase64(imageBytes));
+        }
+        return option;
+    }
+    
+    private String encodeBase64(byte[] imageBytes) {
+        return observations.stage("base64.encode").observe(() -> Base64.getEncoder().encodeToString(imageBytes));
+    }
+    
+    private String createDecorationPrompt(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            DecorationRequest request, 
+            int variation) {
+        
+        return observations.stage("prompt.build").style(style.name()).variation(variation)
+            .observe(() -> DecorationPromptBuilder.build(style, roomAnalysis, request, variation));
+    }
+    
+    private byte[] generateDecoratedImage(ImageBuffer originalImage, String prompt, HedgeBudget hedgeBudget) {
+        try {
+            // The router picks the provider from recent latency and errors, failing over between them
+            return imageGenerationRouter.generate(originalImage, prompt, hedgeBudget);
             
         } catch (Exception e) {
+            // A shed call is reported to the caller instead of being passed off as a placeholder image
+            RateLimitExceededException limited = RateLimitExceededException.find(e);
+            if (limited != null) {
+                throw limited;
+            }
             logger.error("Error generating decorated image", e);
             return generatePlaceholderImage();
         }
     }
     
+    private List<byte[]> padImages(List<byte[]> images, int count) {
+        // A provider may return fewer samples than asked for; the missing ones get the placeholder
+        List<byte[]> padded = new ArrayList<>(images);
+        while (padded.size() < count) {
+            padded.add(generatePlaceholderImage());
+        }
+        return padded;
+    }
+    
+    private Mono<byte[]> generateDecoratedImageReactive(ImageBuffer originalImage, String prompt, HedgeBudget hedgeBudget) {
+        return imageGenerationRouter.generateReactive(originalImage, prompt, hedgeBudget)
+            .onErrorMap(e -> RateLimitExceededException.find(e) != null, RateLimitExceededException::find)
+            .onErrorResume(e -> !(e instanceof RateLimitExceededException), e -> {
+                logger.error("Error generating decorated image", e);
+                return Mono.just(generatePlaceholderImage());
+            });
+    }
+    
     private String generateDescription(DesignStyle style, ImageAnalysisService.RoomAnalysis roomAnalysis, int variation) {
         StringBuilder desc = new StringBuilder();
         desc.append("This ").append(style.getDisplayName()).append(" design transforms your ");
@@ -298,94 +754,48 @@ public class AIDecorationService {
         return modified;
     }
     
-    private String generatePlaceholderImage() {
-        // Generate a simple placeholder image in base64 format
+    private byte[] generatePlaceholderImage() {
         // In a real implementation, you might want to create a proper placeholder
-        return "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==";
+        return PLACEHOLDER_IMAGE;
     }
     
     private List<DecoratedRoomOption> generateFallbackOptions(DecorationRequest request) {
         List<DecoratedRoomOption> fallbackOptions = new ArrayList<>();
         
         DesignStyle style = DesignStyle.fromString(request.getDesignStyle());
-        String placeholderImage = generatePlaceholderImage();
+        byte[] placeholderImage = generatePlaceholderImage();
         
         for (int i = 1; i <= 3; i++) {
             DecoratedRoomOption option = new DecoratedRoomOption(
                 UUID.randomUUID().toString(),
                 style.getDisplayName(),
-                placeholderImage,
+                null,
                 "Fallback design option " + i + " in " + style.getDisplayName() + " style. " +
                 "This design incorporates " + style.getDescription().toLowerCase() + " elements.",
                 Arrays.asList("Style-appropriate furniture", "Complementary colors", "Suitable lighting"),
                 Arrays.asList("Room layout", "Color scheme", "Furniture arrangement"),
                 0.70 + (i * 0.05)
             );
-            fallbackOptions.add(option);
+            fallbackOptions.add(attachImage(option, placeholderImage));
         }
         
         return fallbackOptions;
     }
     
-    // Alternative method using Stable Diffusion (if you have API access)
-    private String generateWithStableDiffusion(byte[] originalImage, String prompt) throws Exception {
-        try {
-            if (stabilityApiKey == null || stabilityApiKey.isEmpty()) {
-                throw new RuntimeException("Stability API key not configured");
-            }
-            
-            String base64Image = Base64.getEncoder().encodeToString(originalImage);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("init_image", base64Image);
-            requestBody.put("init_image_mode", "IMAGE_STRENGTH");
-            requestBody.put("image_strength", 0.35);
-            requestBody.put("steps", 40);
-            requestBody.put("seed", 0);
-            requestBody.put("cfg_scale", 7);
-            requestBody.put("samples", 1);
-            
-            Map<String, Object> textPrompt = new HashMap<>();
-            textPrompt.put("text", prompt);
-            textPrompt.put("weight", 1);
-            requestBody.put("text_prompts", Arrays.asList(textPrompt));
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + stabilityApiKey);
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            String response = restTemplate.postForObject(
-                "https://api.stability.ai/v1/generation/stable-diffusion-xl-1024-v1-0/image-to-image",
-                entity,
-                String.class
-            );
-            
-            JsonNode jsonResponse = objectMapper.readTree(response);
-            return jsonResponse.path("artifacts").get(0).path("base64").asText();
-            
-        } catch (Exception e) {
-            logger.error("Error with Stable Diffusion API", e);
-            throw e;
-        }
-    }
-    
     public DecoratedRoomOption regenerateOption(String optionId, DecorationRequest request) {
         // This method allows regenerating a specific option with different parameters
         try {
             DesignStyle style = DesignStyle.fromString(request.getDesignStyle());
-            String placeholderImage = generatePlaceholderImage();
-            
-            return new DecoratedRoomOption(
+            DecoratedRoomOption option = new DecoratedRoomOption(
                 optionId,
                 style.getDisplayName(),
-                placeholderImage,
+                null,
                 "Regenerated " + style.getDisplayName() + " design with updated preferences.",
                 generateAddedElements(style, null, 2),
                 Arrays.asList("Updated layout", "Revised color scheme", "Modified furniture"),
                 0.80 + Math.random() * 0.15
             );
+            return attachImage(option, generatePlaceholderImage());
             
         } catch (Exception e) {
             logger.error("Error regenerating option", e);
@@ -0,0 +1,242 @@
+package com.room.decorator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.model.DecorationJob;
+import com.room.decorator.model.DecorationJobResponse;
+import com.room.decorator.model.DecorationRequest;
+import com.room.decorator.model.DecorationResponse;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.RateLimitExceededException;
+import com.room.decorator.repository.DecorationJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Durable queue of decoration requests: jobs are persisted first and drained by a fixed worker pool
+@Service
+public class DecorationJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecorationJobService.class);
+
+    @Value("${app.jobs.workers:2}")
+    private int workers;
+
+    // Runs a job gets before it is failed instead of being re-queued again
+    @Value("${app.jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.jobs.shutdown-timeout-seconds:30}")
+    private long shutdownTimeoutSeconds;
+
+    @Autowired
+    private DecorationJobRepository jobRepository;
+
+    @Autowired
+    private RoomDecorationService roomDecorationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private PipelineObservations observations;
+
+    private ExecutorService workerPool;
+    private Semaphore freeWorkers;
+    // Set before running jobs are interrupted; their results are no longer trusted
+    private volatile boolean abandoning;
+
+    @PostConstruct
+    public void init() {
+        this.workerPool = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("decoration-job-"));
+        this.freeWorkers = new Semaphore(workers);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverJobs() {
+        // Jobs that were running when the application stopped are picked up again from the start, unless they
+        // have already used every attempt: a job that keeps taking the application down must not loop forever
+        int failed = jobRepository.failExhausted(DecorationJob.Status.RUNNING, DecorationJob.Status.FAILED, maxAttempts, 
+                                                 "Interrupted after " + maxAttempts + " attempts", Instant.now());
+        if (failed > 0) {
+            logger.warn("Failed {} interrupted decoration jobs that used every attempt", failed);
+        }
+        int requeued = jobRepository.transitionAll(DecorationJob.Status.RUNNING, DecorationJob.Status.QUEUED, Instant.now());
+        if (requeued > 0) {
+            logger.info("Re-queued {} interrupted decoration jobs", requeued);
+        }
+        drainQueue();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Running jobs get a bounded time to finish. Jobs still running after that are interrupted and not stored:
+        // they stay RUNNING with their upload and are re-queued on the next start.
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                logger.warn("Decoration jobs did not finish within {}s, leaving them for recovery", shutdownTimeoutSeconds);
+                abandoning = true;
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandoning = true;
+            workerPool.shutdownNow();
+        }
+    }
+
+    public DecorationJob submit(ImageBuffer image, DecorationRequest request) {
+        DecorationJob job = jobRepository.save(new DecorationJob(UUID.randomUUID().toString(), image.bytes(), request));
+        logger.info("Queued decoration job {}", job.getId());
+        drainQueue();
+        return job;
+    }
+
+    public Optional<DecorationJobResponse> findJob(String jobId) {
+        return jobRepository.findById(jobId).map(this::toResponse);
+    }
+
+    @Scheduled(fixedDelayString = "${app.jobs.poll-interval-ms:2000}")
+    public synchronized void drainQueue() {
+        // Claiming a job now would only spend one of its attempts
+        if (workerPool.isShutdown()) {
+            return;
+        }
+        while (freeWorkers.tryAcquire()) {
+            String jobId = claimNextJob();
+            if (jobId == null) {
+                freeWorkers.release();
+                return;
+            }
+
+            try {
+                workerPool.execute(() -> runJob(jobId));
+            } catch (RejectedExecutionException e) {
+                // Shutting down; leave the job for recovery on the next start
+                freeWorkers.release();
+                return;
+            }
+        }
+    }
+
+    private String claimNextJob() {
+        for (String jobId : jobRepository.findReadyIds(DecorationJob.Status.QUEUED, Instant.now(), PageRequest.of(0, workers))) {
+            if (jobRepository.claim(jobId, DecorationJob.Status.QUEUED, DecorationJob.Status.RUNNING, Instant.now()) == 1) {
+                return jobId;
+            }
+        }
+        return null;
+    }
+
+    private void runJob(String jobId) {
+        try {
+            DecorationJob job = jobRepository.findById(jobId).orElse(null);
+            if (job == null) {
+                return;
+            }
+
+            boolean requeued = false;
+            try {
+                DecorationResponse response = roomDecorationService.decorate(
+                    ImageBuffer.wrap(job.getImageData()), job.toDecorationRequest());
+                job.setResultJson(observations.stage("json.serialize")
+                    .observeChecked(() -> objectMapper.writeValueAsString(response)));
+                job.setStatus(DecorationJob.Status.COMPLETED);
+                logger.info("Completed decoration job {}", jobId);
+            } catch (RateLimitExceededException e) {
+                if (job.getAttempts() >= maxAttempts) {
+                    logger.error("Decoration job {} still rate limited after {} attempts", jobId, job.getAttempts());
+                    job.setErrorMessage("Provider quota exhausted after " + job.getAttempts() + " attempts: " + e.getMessage());
+                    job.setStatus(DecorationJob.Status.FAILED);
+                } else {
+                    // Out of provider quota is temporary: the job goes back in the queue instead of failing,
+                    // but is not claimed again before the quota has had time to refill
+                    logger.warn("Re-queueing decoration job {} for {} ms: {}", jobId, e.getRetryAfterMs(), e.getMessage());
+                    job.setStatus(DecorationJob.Status.QUEUED);
+                    job.setNotBefore(Instant.now().plusMillis(e.getRetryAfterMs()));
+                    requeued = true;
+                }
+            } catch (Exception e) {
+                logger.error("Decoration job {} failed", jobId, e);
+                job.setErrorMessage(e.getMessage());
+                job.setStatus(DecorationJob.Status.FAILED);
+            }
+
+            if (abandoning || Thread.currentThread().isInterrupted()) {
+                // An interrupted decoration returns placeholder options, not a result worth keeping
+                logger.warn("Decoration job {} interrupted by shutdown, leaving it for recovery", jobId);
+                return;
+            }
+
+            if (!requeued) {
+                job.setImageData(null);
+            }
+            job.setUpdatedAt(Instant.now());
+            try {
+                jobRepository.save(job);
+            } catch (Exception e) {
+                // The job stays RUNNING in the store and is recovered on the next start; the worker carries on
+                logger.error("Could not store the outcome of decoration job {}", jobId, e);
+            }
+            if (requeued) {
+                // Out of quota, the next job would most likely be shed too; leave it to the next poll
+                return;
+            }
+
+        } finally {
+            freeWorkers.release();
+        }
+
+        // Pick up the next queued job straight away instead of waiting for the next poll
+        drainQueue();
+    }
+
+    private DecorationJobResponse toResponse(DecorationJob job) {
+        DecorationResponse result = null;
+        if (job.getResultJson() != null) {
+            try {
+                result = objectMapper.readValue(job.getResultJson(), DecorationResponse.class);
+            } catch (Exception e) {
+                logger.error("Stored result for decoration job {} is unreadable", job.getId(), e);
+            }
+        }
+
+        String message;
+        switch (job.getStatus()) {
+            case QUEUED:
+                message = "Job is waiting for a free worker";
+                break;
+            case RUNNING:
+                message = "Job is being processed";
+                break;
+            case COMPLETED:
+                message = "Job completed";
+                break;
+            default:
+                message = "Job failed: " + job.getErrorMessage();
+        }
+
+        return new DecorationJobResponse(job.getId(), job.getStatus(), job.getCreatedAt(),
+                                         job.getUpdatedAt(), result, message);
+    }
+}
@@ -0,0 +1,75 @@
+package com.room.decorator.service;
+
+import com.room.decorator.image.ColorStatistics;
+import com.room.decorator.image.ElementHistogram;
+import com.room.decorator.model.DecorationRequest;
+import com.room.decorator.model.DesignStyle;
+
+// Text prompt for one decoration render, built only from the style, the room analysis and the user's preferences
+public final class DecorationPromptBuilder {
+    
+    private DecorationPromptBuilder() {
+    }
+    
+    public static String build(
+            DesignStyle style, 
+            ImageAnalysisService.RoomAnalysis roomAnalysis, 
+            DecorationRequest request, 
+            int variation) {
+        
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Interior design makeover of a ").append(roomAnalysis.getRoomType().toLowerCase());
+        prompt.append(" in ").append(style.getDisplayName()).append(" style. ");
+        prompt.append(style.getDescription()).append(". ");
+        
+        // Add existing room context
+        // Furniture named by Vision is the most specific; otherwise the histogram summary stays a handful of words
+        // however many contours were found
+        ImageAnalysisService.VisionAnalysis vision = roomAnalysis.getVision();
+        ElementHistogram elements = roomAnalysis.getElementHistogram();
+        prompt.append("Current room has: ");
+        if (vision != null && !vision.getFurniture().isEmpty()) {
+            prompt.append(String.join(", ", vision.getFurniture()));
+        } else {
+            prompt.append(elements != null && !elements.isEmpty() 
+                ? elements.summary() : String.join(", ", roomAnalysis.getDetectedElements()));
+        }
+        prompt.append(" with ").append(roomAnalysis.getLighting().toLowerCase()).append(" lighting and ");
+        prompt.append(roomAnalysis.getColorScheme().toLowerCase()).append(" color scheme. ");
+        
+        ColorStatistics colors = roomAnalysis.getColorStatistics();
+        if (vision != null && !vision.getPalette().isEmpty()) {
+            prompt.append("Palette: ").append(String.join(", ", vision.getPalette())).append(". ");
+        } else if (colors != null && !colors.getDominantColors().isEmpty()) {
+            prompt.append("Dominant colors ").append(String.join(", ", colors.getDominantColors()));
+            prompt.append(String.format(" (%d%% warm, %d%% cool tones). ", 
+                                        Math.round(colors.getWarmRatio() * 100), Math.round(colors.getCoolRatio() * 100)));
+        }
+        
+        // Add variation-specific details
+        switch (variation) {
+            case 1:
+                prompt.append("Focus on maintaining existing furniture while adding decorative elements. ");
+                break;
+            case 2:
+                prompt.append("Blend existing furniture with new complementary pieces. ");
+                break;
+            case 3:
+                prompt.append("Bold transformation with creative furniture arrangement. ");
+                break;
+        }
+        
+        // Add user preferences
+        if (request.getColorPreference() != null && !request.getColorPreference().isEmpty()) {
+            prompt.append("Incorporate ").append(request.getColorPreference()).append(" colors. ");
+        }
+        
+        if (request.isPreserveExistingFurniture()) {
+            prompt.append("Preserve and enhance existing furniture. ");
+        }
+        
+        prompt.append("High quality, realistic, well-lit interior photograph.");
+        
+        return prompt.toString();
+    }
+}
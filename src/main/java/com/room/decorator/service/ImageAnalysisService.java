@@ -3,20 +3,42 @@ package com.room.decorator.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.room.decorator.image.ColorStatistics;
+import com.room.decorator.image.ElementHistogram;
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.image.ImagePreprocessor;
+import com.room.decorator.inference.LocalRoomClassifier;
+import com.room.decorator.inference.RoomClassification;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.RateLimitExceededException;
+import com.room.decorator.ratelimit.RateLimiterRegistry;
+import com.room.decorator.resilience.ProviderGuardRegistry;
+import com.room.decorator.resilience.ProviderUnavailableException;
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.imgproc.Imgproc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.*;
-import static org.opencv.imgcodecs.Imgcodecs.imdecode;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 
 @Service
@@ -24,194 +46,543 @@ public class ImageAnalysisService {
     
     private static final Logger logger = LoggerFactory.getLogger(ImageAnalysisService.class);
     
+    private static final String AI_ANALYSIS_UNAVAILABLE = 
+        "AI analysis unavailable. Basic room detected with standard furniture layout.";
+    
+    private static final String VISION_API_URL = "https://api.openai.com/v1/chat/completions";
+    
+    private static final String VISION_INSTRUCTIONS = 
+        "Analyze this room photo for an interior redecoration. List up to 10 furniture items as short nouns, " +
+        "up to 5 palette colours by name, the style in a few words and a one-sentence description.";
+    
+    // Structured output: the model answers with exactly these fields, so nothing has to be scraped from prose.
+    // Lighting and colour scheme use the same values as the local colour statistics.
+    private static final String ROOM_ANALYSIS_SCHEMA = """
+        {
+          "type": "object",
+          "properties": {
+            "room_type": {"type": "string", "enum": ["Living Room", "Bedroom", "Kitchen", "Bathroom", "Dining Room", "Home Office", "General Room"]},
+            "furniture": {"type": "array", "items": {"type": "string"}},
+            "palette": {"type": "array", "items": {"type": "string"}},
+            "lighting": {"type": "string", "enum": ["Bright", "Natural", "Dim"]},
+            "color_scheme": {"type": "string", "enum": ["Warm", "Cool", "Neutral"]},
+            "style": {"type": "string"},
+            "description": {"type": "string"}
+          },
+          "required": ["room_type", "furniture", "palette", "lighting", "color_scheme", "style", "description"],
+          "additionalProperties": false
+        }
+        """;
+    
+    private static final VisionAnalysis VISION_UNAVAILABLE = VisionAnalysis.describing(AI_ANALYSIS_UNAVAILABLE);
+    
+    // Stands in for the local analysis when OpenCV could not decode the upload, so Vision's answer is used on its own
+    private static final RoomAnalysis LOCAL_UNAVAILABLE = 
+        new RoomAnalysis(Collections.emptyList(), "", "Unknown", "Natural", "Neutral");
+    
     @Value("${openai.api.key}")
     private String openAiApiKey;
     
+    @Value("${app.analysis.cv-timeout-ms:5000}")
+    private long cvTimeoutMs;
+    
+    @Value("${app.analysis.stats-max-edge:128}")
+    private int statsMaxEdge;
+    
+    @Value("${app.analysis.vision-timeout-ms:30000}")
+    private long visionTimeoutMs;
+    
+    // Structured output needs a model that supports json_schema response formats
+    @Value("${app.analysis.vision-model:gpt-4o}")
+    private String visionModel;
+    
+    // The JSON answer is short, so the output budget can be much tighter than for a free-text description
+    @Value("${app.analysis.vision-max-tokens:300}")
+    private int visionMaxTokens;
+    
+    // low: the image is sent as one 512px tile at a fixed token cost | high | auto
+    @Value("${app.analysis.vision-detail:low}")
+    private String visionDetail;
+    
+    // always: Vision runs for every image | unclassified: only when the local classifier is not confident | never
+    @Value("${app.analysis.vision-mode:always}")
+    private String visionMode;
+    
+    // Below this the local scene label is ignored and the room type comes from the heuristics instead
+    @Value("${app.local-model.min-confidence:0.5}")
+    private double minClassifierConfidence;
+    
+    @Autowired
+    private RoomAnalysisCache analysisCache;
+    
+    @Autowired
+    private WebClient webClient;
+    
+    @Autowired
+    private ImagePreprocessor imagePreprocessor;
+    
+    @Autowired
+    private RateLimiterRegistry rateLimiters;
+    
+    @Autowired
+    private LocalRoomClassifier roomClassifier;
+    
+    @Autowired
+    private ProviderGuardRegistry guards;
+    
+    @Autowired
+    private PipelineObservations observations;
+    
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final ExecutorService executorService;
+    private final JsonNode roomAnalysisSchema;
     
-  
-    
-    public ImageAnalysisService() {
-        this.restTemplate = new RestTemplate();
+    public ImageAnalysisService(@Qualifier("analysisExecutor") ExecutorService executorService, RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
         this.objectMapper = new ObjectMapper();
+        this.executorService = executorService;
+        try {
+            this.roomAnalysisSchema = objectMapper.readTree(ROOM_ANALYSIS_SCHEMA);
+        } catch (Exception e) {
+            throw new IllegalStateException("Invalid room analysis schema", e);
+        }
     }
     
     public RoomAnalysis analyzeRoom(byte[] imageData) {
-        try {
-            // Basic computer vision analysis
-            Mat image = imdecode(new MatOfByte(imageData), Imgcodecs.IMREAD_COLOR);
-            
-            // Detect furniture and room elements using OpenCV
-            List<String> detectedElements = detectRoomElements(image);
-            
-            // Use OpenAI Vision API for detailed analysis
-            String aiAnalysis = analyzeWithOpenAI(imageData);
-            
-            return new RoomAnalysis(detectedElements, aiAnalysis, 
-                                  determineRoomType(detectedElements, aiAnalysis),
-                                  analyzeLighting(image),
-                                  analyzeColorScheme(image));
+        return analyzeRoom(ImageBuffer.wrap(imageData));
+    }
+    
+    public RoomAnalysis analyzeRoom(ImageBuffer imageData) {
+        return startAnalysis(imageData).awaitComplete();
+    }
+    
+    public PendingAnalysis startAnalysis(ImageBuffer imageData) {
+        // Repeat uploads of the same photo skip decoding and the Vision call entirely
+        String cacheKey = analysisCache.keyFor(imageData);
+        RoomAnalysis cached = analysisCache.get(cacheKey);
+        if (cached != null) {
+            logger.debug("Room analysis cache hit for image {}", cacheKey);
+            return PendingAnalysis.completed(cached);
+        }
+        
+        long startNanos = System.nanoTime();
+        
+        // Decode and downscale once; the Vision call gets the compact re-encoding, the CV stages the Mat
+        CompletableFuture<ImagePreprocessor.PreparedImage> prepared = 
+            CompletableFuture.supplyAsync(() -> imagePreprocessor.prepare(imageData), executorService);
+        
+        // The local OpenCV stages alone are enough for a provisional analysis
+        CompletableFuture<RoomAnalysis> provisional = 
+            prepared.thenApplyAsync(image -> analyzeLocally(image, startNanos), executorService);
+        
+        // Unless Vision always runs, the local result decides whether it is needed, so it starts after it
+        CompletableFuture<Boolean> visionRuns = "always".equalsIgnoreCase(visionMode)
+            ? CompletableFuture.completedFuture(true)
+            : provisional.handle((local, error) -> needsVision(error == null ? local : null));
+        // An upload OpenCV could not decode is still sent to Vision as it came in
+        CompletableFuture<VisionAnalysis> aiFuture = visionRuns.thenCompose(runs -> runs
+            ? prepared.handleAsync((image, error) -> analyzeWithOpenAI(error == null ? image.getEncoded() : imageData), 
+                                   executorService)
+            : provisional.thenApply(local -> VisionAnalysis.describing(localDescription(local))));
+        
+        CompletableFuture<RoomAnalysis> complete = provisional.handleAsync((local, error) -> {
+            if (error != null) {
+                logger.error("Error analyzing room image", error);
+                if (!needsVision(null)) {
+                    aiFuture.cancel(true);
+                    return failedAnalysis();
+                }
+            }
             
-        } catch (Exception e) {
+            VisionAnalysis vision = awaitStage(aiFuture, startNanos, visionTimeoutMs, VISION_UNAVAILABLE, "Vision");
+            return completeAnalysis(cacheKey, error == null ? local : LOCAL_UNAVAILABLE, vision);
+        }, executorService);
+        
+        return new PendingAnalysis(provisional, complete);
+    }
+    
+    public Mono<RoomAnalysis> analyzeRoomReactive(ImageBuffer imageData) {
+        String cacheKey = analysisCache.keyFor(imageData);
+        RoomAnalysis cached = analysisCache.get(cacheKey);
+        if (cached != null) {
+            logger.debug("Room analysis cache hit for image {}", cacheKey);
+            return Mono.just(cached);
+        }
+        
+        // The local stages free the prepared image once they are done with it. Until they claim it, it is held
+        // here, so a subscriber cancelling or failing in between still frees it when the analysis ends.
+        AtomicReference<ImagePreprocessor.PreparedImage> unclaimed = new AtomicReference<>();
+        AtomicBoolean ended = new AtomicBoolean();
+        
+        // OpenCV is blocking native work, so it runs on the bounded elastic scheduler
+        long startNanos = System.nanoTime();
+        Mono<ImagePreprocessor.PreparedImage> prepared = Mono.fromCallable(() -> {
+            ImagePreprocessor.PreparedImage image = imagePreprocessor.prepare(imageData);
+            unclaimed.set(image);
+            // A cancel does not stop the preparation, whose result may then never be delivered
+            if (ended.get()) {
+                releaseUnclaimed(unclaimed);
+            }
+            return image;
+        })
+            .subscribeOn(Schedulers.boundedElastic())
+            .cache();
+        Mono<RoomAnalysis> local = prepared
+            .publishOn(Schedulers.boundedElastic())
+            .map(image -> {
+                if (!unclaimed.compareAndSet(image, null)) {
+                    throw new IllegalStateException("Room analysis ended before the local stages started");
+                }
+                return analyzeLocally(image, startNanos);
+            })
+            .cache();
+        
+        // An upload OpenCV could not decode is still sent to Vision as it came in
+        Mono<ImageBuffer> visionImage = prepared.map(ImagePreprocessor.PreparedImage::getEncoded).onErrorReturn(imageData);
+        Mono<VisionAnalysis> visionAnalysis = visionImage.flatMap(image -> observations.stage("vision.call").provider("vision")
+            .observeReactive(() -> rateLimiters.forProvider("vision", openAiApiKey)
+                .callReactive(visionTokenEstimate(), () -> guards.forProvider("vision")
+                    .callReactive(() -> webClient.post()
+                        .uri(VISION_API_URL)
+                        .headers(headers -> headers.setBearerAuth(openAiApiKey))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(buildVisionRequest(image))
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .timeout(Duration.ofMillis(visionTimeoutMs)))))
+            .map(this::parseVisionResponse)
+            .onErrorResume(ProviderUnavailableException.class, e -> {
+                logger.warn("Skipping Vision analysis: {}", e.getMessage());
+                return Mono.just(VISION_UNAVAILABLE);
+            })
+            .onErrorResume(e -> {
+                logger.error("Error calling OpenAI Vision API", e);
+                return Mono.just(VISION_UNAVAILABLE);
+            }));
+        Mono<VisionAnalysis> aiAnalysis = "always".equalsIgnoreCase(visionMode)
+            ? visionAnalysis
+            : local.flatMap(analysis -> needsVision(analysis) 
+                    ? visionAnalysis : Mono.just(VisionAnalysis.describing(localDescription(analysis))))
+                .onErrorResume(e -> needsVision(null) ? visionAnalysis : Mono.just(VISION_UNAVAILABLE));
+        
+        Mono<RoomAnalysis> localOrUnavailable = local.onErrorResume(e -> {
             logger.error("Error analyzing room image", e);
-            return new RoomAnalysis(Arrays.asList("Unable to analyze"), 
-                                  "Analysis failed", "Unknown", "Natural", "Neutral");
+            return Mono.just(LOCAL_UNAVAILABLE);
+        });
+        return Mono.zip(localOrUnavailable, aiAnalysis)
+            .map(results -> completeAnalysis(cacheKey, results.getT1(), results.getT2()))
+            .onErrorResume(e -> {
+                logger.error("Error analyzing room image", e);
+                return Mono.just(failedAnalysis());
+            })
+            .doFinally(signal -> {
+                ended.set(true);
+                releaseUnclaimed(unclaimed);
+            });
+    }
+    
+    private static void releaseUnclaimed(AtomicReference<ImagePreprocessor.PreparedImage> unclaimed) {
+        ImagePreprocessor.PreparedImage image = unclaimed.getAndSet(null);
+        if (image != null) {
+            image.release();
         }
     }
     
-    private List<String> detectRoomElements(Mat image) {
-        List<String> elements = new ArrayList<>();
+    private RoomAnalysis completeAnalysis(String cacheKey, RoomAnalysis local, VisionAnalysis vision) {
+        if (local == LOCAL_UNAVAILABLE && vision == VISION_UNAVAILABLE) {
+            return failedAnalysis();
+        }
         
-        try {
-            // Convert to grayscale for edge detection
-            Mat gray = new Mat();
-            Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
-            
-            // Detect edges
-            Mat edges = new Mat();
-            Imgproc.Canny(gray, edges, 50, 150);
-            
-            // Find contours (simplified furniture detection)
-            List<MatOfPoint> contours = new ArrayList<>();
-            Mat hierarchy = new Mat();
-            Imgproc.findContours(edges, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-            
-            // Analyze contours to identify potential furniture
-            for (MatOfPoint contour : contours) {
-                Rect boundingRect = Imgproc.boundingRect(contour);
-                double area = Imgproc.contourArea(contour);
-                
-                // Basic heuristics for furniture detection
-                if (area > 5000) { // Large objects
-                    double aspectRatio = (double) boundingRect.width / boundingRect.height;
-                    
-                    if (aspectRatio > 1.5 && aspectRatio < 3.0) {
-                        elements.add("Table/Desk");
-                    } else if (aspectRatio > 0.7 && aspectRatio < 1.3) {
-                        elements.add("Chair/Square Furniture");
-                    } else if (aspectRatio > 3.0) {
-                        elements.add("Sofa/Long Furniture");
-                    }
-                }
+        // Vision's fields replace the local heuristics, except a confident local classification keeps its room type
+        String roomType = isConfident(local.getClassification()) || vision.getRoomType() == null 
+            ? local.getRoomType() : vision.getRoomType();
+        
+        // Furniture named by Vision leads; local detections fill in anything it missed
+        Set<String> elements = new LinkedHashSet<>(vision.getFurniture());
+        elements.addAll(local.getDetectedElements());
+        
+        RoomAnalysis analysis = new RoomAnalysis(new ArrayList<>(elements), local.getElementHistogram(), 
+                              local.getColorStatistics(), local.getClassification(), vision, 
+                              vision.getDescription(), 
+                              roomType,
+                              vision.getLighting() != null ? vision.getLighting() : local.getLighting(),
+                              vision.getColorScheme() != null ? vision.getColorScheme() : local.getColorScheme());
+        
+        // Only cache complete analyses so a transient Vision outage is not remembered
+        if (vision != VISION_UNAVAILABLE) {
+            analysisCache.put(cacheKey, analysis);
+        }
+        return analysis;
+    }
+    
+    private RoomAnalysis analyzeLocally(ImagePreprocessor.PreparedImage prepared, long startNanos) {
+        // Run the local OpenCV stages in parallel on the shared, already downscaled Mat
+        Mat image = prepared.getImage();
+        
+        // A timed-out stage keeps reading the Mat, so the last stage to actually finish frees it
+        boolean classify = roomClassifier.isAvailable();
+        AtomicInteger runningStages = new AtomicInteger(classify ? 3 : 2);
+        Runnable stageDone = () -> {
+            if (runningStages.decrementAndGet() == 0) {
+                prepared.release();
             }
-            
-            // Add some common room elements as defaults
-            if (elements.isEmpty()) {
-                elements.addAll(Arrays.asList("Walls", "Floor", "General Furniture"));
+        };
+        
+        CompletableFuture<ElementHistogram> elementsFuture = CompletableFuture.supplyAsync(whenDone(
+            () -> observations.stage("cv.elements").observe(() -> detectRoomElements(image)), stageDone), executorService);
+        // Lighting and colour scheme come out of the same single pass over a downsampled copy
+        CompletableFuture<ColorStatistics> colorsFuture = CompletableFuture.supplyAsync(whenDone(
+            () -> observations.stage("cv.colors").observe(() -> analyzeColors(image)), stageDone), executorService);
+        // The classifier only needs its own pixel copy, so the Mat is released before inference starts
+        CompletableFuture<RoomClassification> classificationFuture = classify
+            ? classifyLocally(image, stageDone)
+            : CompletableFuture.completedFuture(null);
+        
+        // Join the stages, falling back to the degraded values if a stage misses its deadline
+        ElementHistogram elements = awaitStage(elementsFuture, startNanos, cvTimeoutMs, null, "element detection");
+        List<String> detectedElements = elementLabels(elements);
+        ColorStatistics colors = awaitStage(colorsFuture, startNanos, cvTimeoutMs, null, "color statistics");
+        RoomClassification classification = awaitStage(classificationFuture, startNanos, cvTimeoutMs, null, "room classification");
+        
+        if (classification != null && !classification.getObjects().isEmpty()) {
+            // Detected objects are more specific than the contour classes, so they lead the element list
+            Set<String> merged = new LinkedHashSet<>(classification.getObjects());
+            merged.addAll(detectedElements);
+            detectedElements = new ArrayList<>(merged);
+        }
+        
+        return new RoomAnalysis(detectedElements, elements, colors, classification, "", 
+                              isConfident(classification) ? classification.getRoomType() : determineRoomType(detectedElements),
+                              colors != null ? colors.lighting() : "Natural",
+                              colors != null ? colors.colorScheme() : "Neutral");
+    }
+    
+    private CompletableFuture<RoomClassification> classifyLocally(Mat image, Runnable stageDone) {
+        // Cancelling the returned stage does not reach the future the batcher handed out, so a timed-out
+        // stage cancels that one explicitly and its input is dropped from the next forward pass
+        CompletableFuture<Void> abandoned = new CompletableFuture<>();
+        CompletableFuture<RoomClassification> classification = observations.stage("cv.classify").observeAsync(() -> 
+            CompletableFuture.supplyAsync(whenDone(() -> roomClassifier.toImage(image), stageDone), executorService)
+                .thenCompose(pixels -> {
+                    CompletableFuture<RoomClassification> inference = roomClassifier.classifyAsync(pixels);
+                    abandoned.thenRun(() -> inference.cancel(true));
+                    return inference;
+                }));
+        classification.whenComplete((result, error) -> {
+            if (classification.isCancelled()) {
+                abandoned.complete(null);
             }
-            
+        });
+        return classification;
+    }
+    
+    private boolean isConfident(RoomClassification classification) {
+        return classification != null && classification.getConfidence() >= minClassifierConfidence;
+    }
+    
+    // A null local analysis means the image could not be decoded, leaving Vision as the only analysis there is
+    private boolean needsVision(RoomAnalysis local) {
+        if ("never".equalsIgnoreCase(visionMode)) {
+            return false;
+        }
+        return local == null || !"unclassified".equalsIgnoreCase(visionMode) || !isConfident(local.getClassification());
+    }
+    
+    // Stands in for the Vision description when the call is skipped
+    private static String localDescription(RoomAnalysis local) {
+        if (local.getClassification() != null) {
+            return local.getClassification().describe();
+        }
+        return "Local analysis: " + local.getRoomType() + " with " + String.join(", ", local.getDetectedElements()) + ".";
+    }
+    
+    private static <T> Supplier<T> whenDone(Supplier<T> stage, Runnable onDone) {
+        return () -> {
+            try {
+                return stage.get();
+            } finally {
+                onDone.run();
+            }
+        };
+    }
+    
+    private static RoomAnalysis failedAnalysis() {
+        return new RoomAnalysis(Arrays.asList("Unable to analyze"), 
+                              "Analysis failed", "Unknown", "Natural", "Neutral");
+    }
+    
+    private <T> T awaitStage(CompletableFuture<T> stage, long startNanos, long timeoutMs, T fallback, String stageName) {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs) - (System.nanoTime() - startNanos);
+        
+        try {
+            return stage.get(Math.max(remainingNanos, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Room analysis stage '{}' timed out after {} ms, using fallback", stageName, timeoutMs);
+            stage.cancel(true);
+            return fallback;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stage.cancel(true);
+            return fallback;
+        } catch (Exception e) {
+            logger.error("Room analysis stage '{}' failed, using fallback", stageName, e);
+            return fallback;
+        }
+    }
+    
+    private ElementHistogram detectRoomElements(Mat image) {
+        try {
+            return ElementHistogram.detect(image);
         } catch (Exception e) {
             logger.error("Error in OpenCV analysis", e);
-            elements.add("Basic Room Structure");
+            return null;
         }
-        
-        return elements;
     }
     
-    private String analyzeWithOpenAI(byte[] imageData) {
+    private static List<String> elementLabels(ElementHistogram histogram) {
+        if (histogram == null) {
+            return Arrays.asList("Basic Room Structure");
+        }
+        // Add some common room elements as defaults
+        if (histogram.isEmpty()) {
+            return Arrays.asList("Walls", "Floor", "General Furniture");
+        }
+        return histogram.labels();
+    }
+    
+    private VisionAnalysis analyzeWithOpenAI(ImageBuffer imageData) {
         try {
-            String base64Image = Base64.getEncoder().encodeToString(imageData);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", "gpt-4-vision-preview");
-            requestBody.put("max_tokens", 500);
-            
-            List<Map<String, Object>> messages = new ArrayList<>();
-            Map<String, Object> message = new HashMap<>();
-            message.put("role", "user");
-            
-            List<Map<String, Object>> content = new ArrayList<>();
-            
-            // Text part
-            Map<String, Object> textContent = new HashMap<>();
-            textContent.put("type", "text");
-            textContent.put("text", "Analyze this room image. Identify furniture, room type, color scheme, lighting, and style. Provide a detailed description for interior decoration purposes.");
-            content.add(textContent);
-            
-            // Image part
-            Map<String, Object> imageContent = new HashMap<>();
-            imageContent.put("type", "image_url");
-            Map<String, Object> imageUrl = new HashMap<>();
-            imageUrl.put("url", "data:image/jpeg;base64," + base64Image);
-            imageContent.put("image_url", imageUrl);
-            content.add(imageContent);
-            
-            message.put("content", content);
-            messages.add(message);
-            requestBody.put("messages", messages);
-            
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             headers.setBearerAuth(openAiApiKey);
             
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(buildVisionRequest(imageData), headers);
             
-            String response = restTemplate.postForObject(
-                "https://api.openai.com/v1/chat/completions", 
-                entity, 
-                String.class
-            );
+            // The circuit breaker rejects straight away while Vision is failing, instead of waiting out the socket timeout.
+            // It sits inside the rate limiter, so a wait for quota neither holds a bulkhead slot nor counts as a slow call.
+            String response = observations.stage("vision.call").provider("vision").observeChecked(() -> 
+                rateLimiters.forProvider("vision", openAiApiKey).call(visionTokenEstimate(), () -> 
+                    guards.forProvider("vision").call(() -> 
+                        restTemplate.postForObject(
+                            VISION_API_URL, 
+                            entity, 
+                            String.class
+                        ))));
             
-            JsonNode jsonResponse = objectMapper.readTree(response);
-            return jsonResponse.path("choices").get(0).path("message").path("content").asText();
+            return parseVisionResponse(response);
             
+        } catch (RateLimitExceededException | ProviderUnavailableException e) {
+            // Out of Vision quota or circuit open: the local analysis alone is the degraded result, no call is wasted
+            logger.warn("Skipping Vision analysis: {}", e.getMessage());
+            return VISION_UNAVAILABLE;
         } catch (Exception e) {
             logger.error("Error calling OpenAI Vision API", e);
-            return "AI analysis unavailable. Basic room detected with standard furniture layout.";
+            return VISION_UNAVAILABLE;
+        }
+    }
+    
+    // Counted against the TPM quota up front: the image at its detail level, the instructions and schema, and max_tokens
+    private long visionTokenEstimate() {
+        long imageTokens = "low".equalsIgnoreCase(visionDetail) ? 85 : 765;
+        return imageTokens + 250 + visionMaxTokens;
+    }
+    
+    private Map<String, Object> buildVisionRequest(ImageBuffer imageData) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", visionModel);
+        requestBody.put("max_tokens", visionMaxTokens);
+        
+        Map<String, Object> jsonSchema = new HashMap<>();
+        jsonSchema.put("name", "room_analysis");
+        jsonSchema.put("strict", true);
+        jsonSchema.put("schema", roomAnalysisSchema);
+        Map<String, Object> responseFormat = new HashMap<>();
+        responseFormat.put("type", "json_schema");
+        responseFormat.put("json_schema", jsonSchema);
+        requestBody.put("response_format", responseFormat);
+        
+        List<Map<String, Object>> messages = new ArrayList<>();
+        Map<String, Object> message = new HashMap<>();
+        message.put("role", "user");
+        
+        List<Map<String, Object>> content = new ArrayList<>();
+        
+        // Text part
+        Map<String, Object> textContent = new HashMap<>();
+        textContent.put("type", "text");
+        textContent.put("text", VISION_INSTRUCTIONS);
+        content.add(textContent);
+        
+        // Image part
+        Map<String, Object> imageContent = new HashMap<>();
+        imageContent.put("type", "image_url");
+        Map<String, Object> imageUrl = new HashMap<>();
+        // Encoded once per request and written into the JSON body without an intermediate String
+        imageUrl.put("url", observations.stage("base64.encode").provider("vision").observe(imageData::dataUrl));
+        imageUrl.put("detail", visionDetail);
+        imageContent.put("image_url", imageUrl);
+        content.add(imageContent);
+        
+        message.put("content", content);
+        messages.add(message);
+        requestBody.put("messages", messages);
+        
+        return requestBody;
+    }
+    
+    private VisionAnalysis parseVisionResponse(String response) {
+        JsonNode message;
+        try {
+            message = objectMapper.readTree(response).path("choices").path(0).path("message");
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable Vision API response", e);
+        }
+        
+        // A refusal or a truncated answer does not match the schema, so it counts as no Vision result
+        if (message.hasNonNull("refusal")) {
+            throw new IllegalStateException("Vision refused the image: " + message.path("refusal").asText());
+        }
+        try {
+            return VisionAnalysis.fromJson(objectMapper.readTree(message.path("content").asText()));
+        } catch (Exception e) {
+            throw new IllegalStateException("Vision answer does not match the room analysis schema", e);
         }
     }
     
-    private String determineRoomType(List<String> elements, String aiAnalysis) {
-        String analysisLower = aiAnalysis.toLowerCase();
+    // Local fallback when no classification or Vision answer names the room: match the short detector labels
+    private String determineRoomType(List<String> elements) {
+        Set<String> labels = new HashSet<>();
+        for (String element : elements) {
+            labels.add(element.toLowerCase());
+        }
         
-        if (analysisLower.contains("kitchen") || analysisLower.contains("stove") || analysisLower.contains("refrigerator")) {
+        if (labels.contains("oven") || labels.contains("refrigerator") || labels.contains("stove")) {
             return "Kitchen";
-        } else if (analysisLower.contains("bedroom") || analysisLower.contains("bed")) {
+        } else if (labels.contains("bed")) {
             return "Bedroom";
-        } else if (analysisLower.contains("bathroom") || analysisLower.contains("toilet") || analysisLower.contains("shower")) {
+        } else if (labels.contains("toilet") || labels.contains("shower") || labels.contains("bathtub")) {
             return "Bathroom";
-        } else if (analysisLower.contains("dining") || analysisLower.contains("dining table")) {
+        } else if (labels.contains("dining table")) {
             return "Dining Room";
-        } else if (analysisLower.contains("living") || analysisLower.contains("sofa") || analysisLower.contains("couch")) {
+        } else if (labels.contains("sofa") || labels.contains("couch") || labels.contains("tv")) {
             return "Living Room";
         } else {
             return "General Room";
         }
     }
     
-    private String analyzeLighting(Mat image) {
-        Scalar meanBrightness = Core.mean(image);
-        double brightness = (meanBrightness.val[0] + meanBrightness.val[1] + meanBrightness.val[2]) / 3;
-        
-        if (brightness > 180) {
-            return "Bright";
-        } else if (brightness > 120) {
-            return "Natural";
-        } else {
-            return "Dim";
-        }
-    }
-    
-    private String analyzeColorScheme(Mat image) {
-        // Simplified color analysis
-        Scalar meanColor = Core.mean(image);
-        double blue = meanColor.val[0];
-        double green = meanColor.val[1];
-        double red = meanColor.val[2];
-        
-        if (red > green && red > blue) {
-            return "Warm";
-        } else if (blue > red && blue > green) {
-            return "Cool";
-        } else {
-            return "Neutral";
-        }
+    private ColorStatistics analyzeColors(Mat image) {
+        return ColorStatistics.of(image, statsMaxEdge);
     }
     
     // Inner class for room analysis results
     public static class RoomAnalysis {
         private final List<String> detectedElements;
+        private final ElementHistogram elementHistogram;
+        private final ColorStatistics colorStatistics;
+        private final RoomClassification classification;
+        private final VisionAnalysis vision;
         private final String aiDescription;
         private final String roomType;
         private final String lighting;
@@ -219,7 +590,30 @@ public class ImageAnalysisService {
         
         public RoomAnalysis(List<String> detectedElements, String aiDescription, 
                           String roomType, String lighting, String colorScheme) {
+            this(detectedElements, null, null, aiDescription, roomType, lighting, colorScheme);
+        }
+        
+        public RoomAnalysis(List<String> detectedElements, ElementHistogram elementHistogram, 
+                          ColorStatistics colorStatistics, String aiDescription, 
+                          String roomType, String lighting, String colorScheme) {
+            this(detectedElements, elementHistogram, colorStatistics, null, aiDescription, roomType, lighting, colorScheme);
+        }
+        
+        public RoomAnalysis(List<String> detectedElements, ElementHistogram elementHistogram, 
+                          ColorStatistics colorStatistics, RoomClassification classification, String aiDescription, 
+                          String roomType, String lighting, String colorScheme) {
+            this(detectedElements, elementHistogram, colorStatistics, classification, null, aiDescription, 
+                 roomType, lighting, colorScheme);
+        }
+        
+        public RoomAnalysis(List<String> detectedElements, ElementHistogram elementHistogram, 
+                          ColorStatistics colorStatistics, RoomClassification classification, VisionAnalysis vision, 
+                          String aiDescription, String roomType, String lighting, String colorScheme) {
             this.detectedElements = detectedElements;
+            this.elementHistogram = elementHistogram;
+            this.colorStatistics = colorStatistics;
+            this.classification = classification;
+            this.vision = vision;
             this.aiDescription = aiDescription;
             this.roomType = roomType;
             this.lighting = lighting;
@@ -228,9 +622,121 @@ public class ImageAnalysisService {
         
         // Getters
         public List<String> getDetectedElements() { return detectedElements; }
+        public ElementHistogram getElementHistogram() { return elementHistogram; }
+        public ColorStatistics getColorStatistics() { return colorStatistics; }
+        public RoomClassification getClassification() { return classification; }
+        public VisionAnalysis getVision() { return vision; }
         public String getAiDescription() { return aiDescription; }
         public String getRoomType() { return roomType; }
         public String getLighting() { return lighting; }
         public String getColorScheme() { return colorScheme; }
+        
+        public RoomAnalysis withRoomType(String roomType) {
+            return new RoomAnalysis(detectedElements, elementHistogram, colorStatistics, classification, 
+                                    vision, aiDescription, roomType, lighting, colorScheme);
+        }
+    }
+    
+    // Fields of the structured Vision answer; a null room type, lighting or colour scheme means Vision did not
+    // provide one and the local values apply
+    public static class VisionAnalysis {
+        private final String roomType;
+        private final List<String> furniture;
+        private final List<String> palette;
+        private final String lighting;
+        private final String colorScheme;
+        private final String style;
+        private final String description;
+        
+        public VisionAnalysis(String roomType, List<String> furniture, List<String> palette, String lighting, 
+                              String colorScheme, String style, String description) {
+            this.roomType = roomType;
+            this.furniture = furniture;
+            this.palette = palette;
+            this.lighting = lighting;
+            this.colorScheme = colorScheme;
+            this.style = style;
+            this.description = description;
+        }
+        
+        // Description only, for when Vision was skipped or unavailable
+        static VisionAnalysis describing(String description) {
+            return new VisionAnalysis(null, Collections.emptyList(), Collections.emptyList(), null, null, null, description);
+        }
+        
+        static VisionAnalysis fromJson(JsonNode json) {
+            return new VisionAnalysis(
+                requiredText(json, "room_type"),
+                textList(json.path("furniture")),
+                textList(json.path("palette")),
+                requiredText(json, "lighting"),
+                requiredText(json, "color_scheme"),
+                json.path("style").asText(""),
+                requiredText(json, "description"));
+        }
+        
+        private static String requiredText(JsonNode json, String field) {
+            JsonNode value = json.get(field);
+            if (value == null || !value.isTextual() || value.asText().isBlank()) {
+                throw new IllegalArgumentException("Missing " + field);
+            }
+            return value.asText();
+        }
+        
+        private static List<String> textList(JsonNode array) {
+            List<String> values = new ArrayList<>();
+            for (JsonNode item : array) {
+                String value = item.asText().trim();
+                if (!value.isEmpty()) {
+                    values.add(value);
+                }
+            }
+            return values;
+        }
+        
+        // Getters
+        public String getRoomType() { return roomType; }
+        public List<String> getFurniture() { return furniture; }
+        public List<String> getPalette() { return palette; }
+        public String getLighting() { return lighting; }
+        public String getColorScheme() { return colorScheme; }
+        public String getStyle() { return style; }
+        public String getDescription() { return description; }
+    }
+    
+    // Handle on an in-flight analysis: the provisional result only needs the local OpenCV stages,
+    // the complete one also waits for the Vision call
+    public static class PendingAnalysis {
+        private final CompletableFuture<RoomAnalysis> provisional;
+        private final CompletableFuture<RoomAnalysis> complete;
+        
+        PendingAnalysis(CompletableFuture<RoomAnalysis> provisional, CompletableFuture<RoomAnalysis> complete) {
+            this.provisional = provisional;
+            this.complete = complete;
+        }
+        
+        static PendingAnalysis completed(RoomAnalysis analysis) {
+            CompletableFuture<RoomAnalysis> done = CompletableFuture.completedFuture(analysis);
+            return new PendingAnalysis(done, done);
+        }
+        
+        public CompletableFuture<RoomAnalysis> getProvisional() { return provisional; }
+        public CompletableFuture<RoomAnalysis> getComplete() { return complete; }
+        
+        public RoomAnalysis awaitProvisional() {
+            try {
+                return provisional.join();
+            } catch (Exception e) {
+                return failedAnalysis();
+            }
+        }
+        
+        public RoomAnalysis awaitComplete() {
+            try {
+                return complete.join();
+            } catch (Exception e) {
+                return failedAnalysis();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.room.decorator.service;
+
+import com.room.decorator.storage.ImageStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generated renders indexed by a fingerprint of the normalised prompt inputs, pointing into the image store.
+// Bounded by the total size of the referenced images; evicted entries only leave the index, since earlier
+// responses may still link to the stored image. The image store's retention sweep deletes the files.
+@Component
+public class RenderCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderCache.class);
+
+    @Value("${app.render-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.render-cache.max-size-mb:256}")
+    private long maxSizeMb;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Access-ordered so iteration starts at the least recently used render
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public RenderCache(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("render.cache.hits", hits, AtomicLong::get)
+            .description("Decoration renders reused from cache")
+            .register(meterRegistry);
+        FunctionCounter.builder("render.cache.misses", misses, AtomicLong::get)
+            .description("Cache lookups that had to generate a new render")
+            .register(meterRegistry);
+        FunctionCounter.builder("render.cache.evictions", evictions, AtomicLong::get)
+            .description("Renders dropped from the cache by the size bound")
+            .register(meterRegistry);
+        Gauge.builder("render.cache.size", this, RenderCache::size)
+            .description("Renders currently cached")
+            .register(meterRegistry);
+        Gauge.builder("render.cache.bytes", this, RenderCache::getTotalBytes)
+            .description("Total size of the cached renders")
+            .register(meterRegistry);
+    }
+
+    public String keyFor(String fingerprint) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(fingerprint.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public ImageStore.StoredImage get(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        String imageId;
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            imageId = entry != null ? entry.imageId : null;
+        }
+
+        // The stored image may have been removed behind the cache's back
+        Optional<ImageStore.StoredImage> stored = imageId != null ? imageStore.find(imageId) : Optional.empty();
+        if (stored.isEmpty()) {
+            if (imageId != null) {
+                remove(key);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return stored.get();
+    }
+
+    public void put(String key, String imageId, long size) {
+        if (!enabled || imageId == null) {
+            return;
+        }
+
+        long maxBytes = maxSizeMb * 1024 * 1024;
+        synchronized (entries) {
+            CacheEntry previous = entries.put(key, new CacheEntry(imageId, size));
+            totalBytes += size - (previous != null ? previous.size : 0);
+
+            Iterator<CacheEntry> eldest = entries.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                totalBytes -= eldest.next().size;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        logger.debug("Cached render {} as image {}", key, imageId);
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            CacheEntry entry = entries.remove(key);
+            if (entry != null) {
+                totalBytes -= entry.size;
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    private static class CacheEntry {
+        private final String imageId;
+        private final long size;
+
+        CacheEntry(String imageId, long size) {
+            this.imageId = imageId;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.room.decorator.service;
+
+import com.room.decorator.image.ImageBuffer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Content-addressed LRU cache for room analysis results, keyed by the SHA-256 of the image bytes
+@Component
+public class RoomAnalysisCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomAnalysisCache.class);
+
+    @Value("${app.analysis-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.analysis-cache.max-entries:256}")
+    private int maxEntries;
+
+    @Value("${app.analysis-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Access-ordered so the eldest entry is always the least recently used one
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public RoomAnalysisCache(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("room.analysis.cache.hits", hits, AtomicLong::get)
+            .description("Room analyses served from cache")
+            .register(meterRegistry);
+        FunctionCounter.builder("room.analysis.cache.misses", misses, AtomicLong::get)
+            .description("Room analyses that had to be computed")
+            .register(meterRegistry);
+        FunctionCounter.builder("room.analysis.cache.evictions", evictions, AtomicLong::get)
+            .description("Room analyses evicted by the size bound")
+            .register(meterRegistry);
+        Gauge.builder("room.analysis.cache.size", this, RoomAnalysisCache::size)
+            .description("Room analyses currently cached")
+            .register(meterRegistry);
+    }
+
+    public String keyFor(ImageBuffer imageData) {
+        return imageData.sha256();
+    }
+
+    public ImageAnalysisService.RoomAnalysis get(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.isExpired(ttlMinutes)) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            return entry.analysis;
+        }
+    }
+
+    public void put(String key, ImageAnalysisService.RoomAnalysis analysis) {
+        if (!enabled || analysis == null) {
+            return;
+        }
+
+        synchronized (entries) {
+            entries.put(key, new CacheEntry(analysis, System.currentTimeMillis()));
+        }
+        logger.debug("Cached room analysis for image {}", key);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    private static class CacheEntry {
+        private final ImageAnalysisService.RoomAnalysis analysis;
+        private final long createdAt;
+
+        CacheEntry(ImageAnalysisService.RoomAnalysis analysis, long createdAt) {
+            this.analysis = analysis;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long ttlMinutes) {
+            return ttlMinutes > 0 && System.currentTimeMillis() - createdAt > ttlMinutes * 60_000L;
+        }
+    }
+}
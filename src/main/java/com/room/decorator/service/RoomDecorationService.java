@@ -0,0 +1,60 @@
+package com.room.decorator.service;
+
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.model.DecoratedRoomOption;
+import com.room.decorator.model.DecorationRequest;
+import com.room.decorator.model.DecorationResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Runs the full analyze-then-generate pipeline for one decoration request
+@Service
+public class RoomDecorationService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RoomDecorationService.class);
+    
+    @Autowired
+    private ImageAnalysisService imageAnalysisService;
+    
+    @Autowired
+    private AIDecorationService aiDecorationService;
+    
+    @Value("${app.decoration.speculative-generation:false}")
+    private boolean speculativeGeneration;
+    
+    public DecorationResponse decorate(ImageBuffer imageBytes, DecorationRequest request) {
+        // Analyze the room
+        logger.info("Analyzing room image for style: {}", request.getDesignStyle());
+        ImageAnalysisService.PendingAnalysis pendingAnalysis = imageAnalysisService.startAnalysis(imageBytes);
+        
+        // Generate decoration options
+        logger.info("Generating decoration options...");
+        List<DecoratedRoomOption> options = generateOptions(imageBytes, request, pendingAnalysis);
+        ImageAnalysisService.RoomAnalysis roomAnalysis = pendingAnalysis.awaitComplete();
+        
+        logger.info("Successfully generated {} decoration options", options.size());
+        return new DecorationResponse(
+            options,
+            roomAnalysis.getAiDescription(),
+            true,
+            "Successfully generated " + options.size() + " decoration options"
+        );
+    }
+    
+    private List<DecoratedRoomOption> generateOptions(
+            ImageBuffer imageBytes, 
+            DecorationRequest request, 
+            ImageAnalysisService.PendingAnalysis pendingAnalysis) {
+        
+        // Speculative mode starts generating from the local analysis before the Vision call returns
+        if (speculativeGeneration) {
+            return aiDecorationService.generateDecorationOptionsSpeculatively(imageBytes, request, pendingAnalysis);
+        }
+        return aiDecorationService.generateDecorationOptions(imageBytes, request, pendingAnalysis.awaitComplete());
+    }
+}
@@ -0,0 +1,177 @@
+package com.room.decorator.storage;
+
+import com.room.decorator.image.ImageBuffer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+// Content-addressed store: the id is the SHA-256 of the bytes, so identical images are written once.
+// Images not stored again within the retention period are swept, since nothing else ever deletes them.
+@Component
+@ConditionalOnProperty(name = "app.image-store.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemImageStore implements ImageStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemImageStore.class);
+    
+    private static final Pattern IMAGE_ID = Pattern.compile("[a-f0-9]{64}\\.(png|jpg|webp)");
+    
+    @Value("${app.image-store.directory:./data/images}")
+    private String directory;
+    
+    // Counted from the last time an image was stored; 0 keeps images forever
+    @Value("${app.image-store.retention-hours:168}")
+    private long retentionHours;
+    
+    private Path root;
+    
+    @PostConstruct
+    public void init() throws IOException {
+        this.root = Paths.get(directory).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        logger.info("Storing generated images in {}", root);
+    }
+    
+    @Override
+    public String store(byte[] imageData) {
+        String imageId = sha256(imageData) + "." + extensionOf(imageData);
+        Path target = root.resolve(imageId);
+        
+        try {
+            // Storing an image again restarts its retention period
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            return imageId;
+        } catch (NoSuchFileException e) {
+            // Not stored yet, or swept since
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store image " + imageId, e);
+        }
+        
+        try {
+            // Write to a temp file and move it into place so readers never see a partial image
+            Path temp = Files.createTempFile(root, "upload-", ".tmp");
+            Files.write(temp, imageData);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(temp);
+            }
+            return imageId;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store image " + imageId, e);
+        }
+    }
+    
+    @Override
+    public Optional<StoredImage> find(String imageId) {
+        Path path = resolve(imageId);
+        if (path == null || !Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        
+        try {
+            return Optional.of(new StoredImage(imageId, new FileSystemResource(path), 
+                                               contentTypeOf(imageId), Files.size(path)));
+        } catch (IOException e) {
+            logger.error("Could not read stored image {}", imageId, e);
+            return Optional.empty();
+        }
+    }
+    
+    @Override
+    public boolean delete(String imageId) {
+        Path path = resolve(imageId);
+        try {
+            return path != null && Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.error("Could not delete stored image {}", imageId, e);
+            return false;
+        }
+    }
+    
+    // Also removes temp files left behind by a write that never completed
+    @Scheduled(fixedDelayString = "${app.image-store.cleanup-interval-ms:3600000}", 
+               initialDelayString = "${app.image-store.cleanup-interval-ms:3600000}")
+    public void deleteExpired() {
+        if (retentionHours <= 0) {
+            return;
+        }
+        
+        FileTime cutoff = FileTime.from(Instant.now().minus(retentionHours, ChronoUnit.HOURS));
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!IMAGE_ID.matcher(name).matches() && !(name.startsWith("upload-") && name.endsWith(".tmp"))) {
+                    continue;
+                }
+                try {
+                    if (Files.getLastModifiedTime(file).compareTo(cutoff) < 0 && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not delete expired image {}", name, e);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not sweep expired images from {}", root, e);
+        }
+        
+        if (deleted > 0) {
+            logger.info("Deleted {} images not stored within the last {} hours", deleted, retentionHours);
+        }
+    }
+    
+    private Path resolve(String imageId) {
+        // Only well-formed ids are accepted, which also rules out path traversal
+        if (imageId == null || !IMAGE_ID.matcher(imageId).matches()) {
+            return null;
+        }
+        return root.resolve(imageId);
+    }
+    
+    private static String extensionOf(byte[] imageData) {
+        switch (ImageBuffer.sniffMediaType(imageData)) {
+            case "image/png":
+                return "png";
+            case "image/webp":
+                return "webp";
+            default:
+                return "jpg";
+        }
+    }
+    
+    private static String contentTypeOf(String imageId) {
+        if (imageId.endsWith(".jpg")) {
+            return "image/jpeg";
+        }
+        if (imageId.endsWith(".webp")) {
+            return "image/webp";
+        }
+        return "image/png";
+    }
+    
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
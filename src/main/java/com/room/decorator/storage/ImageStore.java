@@ -0,0 +1,34 @@
+package com.room.decorator.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.util.Optional;
+
+// Blob store for generated images; ids are stable so options can reference images by URL
+public interface ImageStore {
+    
+    String store(byte[] imageData);
+    
+    Optional<StoredImage> find(String imageId);
+    
+    boolean delete(String imageId);
+    
+    class StoredImage {
+        private final String id;
+        private final Resource resource;
+        private final String contentType;
+        private final long size;
+        
+        public StoredImage(String id, Resource resource, String contentType, long size) {
+            this.id = id;
+            this.resource = resource;
+            this.contentType = contentType;
+            this.size = size;
+        }
+        
+        public String getId() { return id; }
+        public Resource getResource() { return resource; }
+        public String getContentType() { return contentType; }
+        public long getSize() { return size; }
+    }
+}
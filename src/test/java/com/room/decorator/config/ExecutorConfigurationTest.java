@@ -0,0 +1,74 @@
+package com.room.decorator.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExecutorConfigurationTest {
+
+    private ExecutorConfiguration configuration;
+
+    @BeforeEach
+    void setUp() {
+        configuration = new ExecutorConfiguration();
+        ReflectionTestUtils.setField(configuration, "mode", "bounded");
+        ReflectionTestUtils.setField(configuration, "coreSize", 1);
+        ReflectionTestUtils.setField(configuration, "maxSize", 1);
+        ReflectionTestUtils.setField(configuration, "queueCapacity", 1);
+        ReflectionTestUtils.setField(configuration, "analysisMaxSize", 2);
+        ReflectionTestUtils.setField(configuration, "shutdownTimeoutSeconds", 5L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        configuration.shutdownExecutors();
+    }
+
+    @Test
+    void tasksSubmittedAfterShutdownAreRefusedRatherThanDropped() {
+        ExecutorService executor = configuration.decorationExecutor(new SimpleMeterRegistry());
+        configuration.shutdownExecutors();
+
+        assertThatThrownBy(() -> CompletableFuture.supplyAsync(() -> "option", executor))
+            .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void saturatedAnalysisPoolRunsStagesOnTheSubmittingThread() throws Exception {
+        ExecutorService executor = configuration.analysisExecutor(new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            executor.execute(() -> {
+                threads.add(Thread.currentThread().getName());
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> overflow = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor);
+
+        assertThat(overflow.get(5, TimeUnit.SECONDS)).isEqualTo(Thread.currentThread().getName());
+        release.countDown();
+        assertThat(threads).hasSize(2).allSatisfy(name -> assertThat(name).startsWith("analysis-"));
+    }
+}
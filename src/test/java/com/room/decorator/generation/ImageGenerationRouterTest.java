@@ -0,0 +1,126 @@
+package com.room.decorator.generation;
+
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.ProviderRateLimiter;
+import com.room.decorator.resilience.ProviderGuard;
+import com.room.decorator.resilience.ProviderGuardRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageGenerationRouterTest {
+
+    private static final ImageBuffer ORIGINAL = ImageBuffer.wrap(new byte[] {1, 2, 3});
+
+    @Test
+    void waitingForQuotaHoldsNoBulkheadSlot() throws Exception {
+        // One call at a time by quota and by bulkhead; the second call queues for quota, not for the guard
+        ProviderRateLimiter limiter = new ProviderRateLimiter("stub", 0, 0, 1, 1, 1, 5_000);
+        SleepingProvider provider = new SleepingProvider(200, limiter);
+        ProviderGuardRegistry guards = guards(1);
+        ImageGenerationRouter router = router(provider, guards, 5_000);
+
+        CompletableFuture<byte[]> first = CompletableFuture.supplyAsync(() -> generate(router));
+        CompletableFuture<byte[]> second = CompletableFuture.supplyAsync(() -> generate(router));
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isNotEmpty();
+        assertThat(second.get(5, TimeUnit.SECONDS)).isNotEmpty();
+        ProviderGuard guard = guards.forProvider("stub");
+        assertThat(guard.getBulkheadRejections()).isZero();
+        assertThat(guard.getCircuitState()).isZero();
+    }
+
+    @Test
+    void blockingCallIsGivenUpAtTheDeadlineAndCountsAgainstTheProvider() {
+        SleepingProvider provider = new SleepingProvider(10_000, null);
+        ProviderGuardRegistry guards = guards(4);
+        ImageGenerationRouter router = router(provider, guards, 100);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> router.generateWith(provider, ORIGINAL, "a room"))
+            .isInstanceOf(TimeoutException.class);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+        // The guard opens on the first failure in this setup
+        assertThat(guards.forProvider("stub").getCircuitState()).isEqualTo(1);
+    }
+
+    private static byte[] generate(ImageGenerationRouter router) {
+        try {
+            return router.generate(ORIGINAL, "a room", null);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ImageGenerationRouter router(ImageGenerationProvider provider, ProviderGuardRegistry guards, long timeoutMs) {
+        ImageGenerationRouter router = new ImageGenerationRouter();
+        ReflectionTestUtils.setField(router, "providerNames", List.of(provider.getName()));
+        ReflectionTestUtils.setField(router, "routing", "ordered");
+        ReflectionTestUtils.setField(router, "statsWindow", 100);
+        ReflectionTestUtils.setField(router, "timeoutMs", timeoutMs);
+        ReflectionTestUtils.setField(router, "availableProviders", List.of(provider));
+        ReflectionTestUtils.setField(router, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(router, "guards", guards);
+        ReflectionTestUtils.setField(router, "observations", new PipelineObservations(ObservationRegistry.NOOP));
+        router.init();
+        return router;
+    }
+
+    private static ProviderGuardRegistry guards(int maxConcurrentCalls) {
+        ProviderGuardRegistry guards = new ProviderGuardRegistry();
+        ReflectionTestUtils.setField(guards, "enabled", true);
+        ReflectionTestUtils.setField(guards, "failureRateThreshold", 100);
+        ReflectionTestUtils.setField(guards, "windowSize", 1);
+        ReflectionTestUtils.setField(guards, "minimumCalls", 1);
+        ReflectionTestUtils.setField(guards, "openDurationMs", 60_000L);
+        ReflectionTestUtils.setField(guards, "halfOpenCalls", 1);
+        ReflectionTestUtils.setField(guards, "slowCallMs", 0L);
+        ReflectionTestUtils.setField(guards, "maxConcurrentCalls", maxConcurrentCalls);
+        ReflectionTestUtils.setField(guards, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(guards, "meterRegistry", new SimpleMeterRegistry());
+        return guards;
+    }
+
+    private static class SleepingProvider implements ImageGenerationProvider {
+        private final long sleepMs;
+        private final ProviderRateLimiter limiter;
+
+        SleepingProvider(long sleepMs, ProviderRateLimiter limiter) {
+            this.sleepMs = sleepMs;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public String getName() {
+            return "stub";
+        }
+
+        @Override
+        public boolean isConfigured() {
+            return true;
+        }
+
+        @Override
+        public byte[] generate(ImageBuffer originalImage, String prompt) throws InterruptedException {
+            Thread.sleep(sleepMs);
+            return originalImage.bytes();
+        }
+
+        @Override
+        public ProviderRateLimiter rateLimiter() {
+            return limiter;
+        }
+    }
+}
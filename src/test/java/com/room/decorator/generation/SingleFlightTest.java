@@ -0,0 +1,133 @@
+package com.room.decorator.generation;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentBlockingCallersShareOneCall() throws Exception {
+        AtomicInteger coalesced = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+        SingleFlight<String, String> flights = new SingleFlight<>(coalesced::incrementAndGet);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> flights.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "image";
+            }));
+            started.await();
+            Future<String> waiter = executor.submit(() -> flights.execute("key", () -> {
+                calls.incrementAndGet();
+                return "other";
+            }));
+
+            while (coalesced.get() == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("image");
+            assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo("image");
+            assertThat(calls.get()).isEqualTo(1);
+            assertThat(flights.size()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void blockingFailureIsRethrownAndNotRemembered() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>(() -> { });
+
+        assertThatThrownBy(() -> flights.execute("key", () -> {
+            throw new IllegalStateException("provider down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(flights.execute("key", () -> "image")).isEqualTo("image");
+    }
+
+    @Test
+    void reactiveCallersShareOneSubscription() {
+        AtomicInteger coalesced = new AtomicInteger();
+        AtomicInteger subscriptions = new AtomicInteger();
+        SingleFlight<String, String> flights = new SingleFlight<>(coalesced::incrementAndGet);
+        Sinks.One<String> provider = Sinks.one();
+        Supplier<Mono<String>> call = () -> provider.asMono().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        AtomicReference<String> first = new AtomicReference<>();
+        AtomicReference<String> second = new AtomicReference<>();
+        flights.executeReactive("key", call).subscribe(first::set);
+        flights.executeReactive("key", call).subscribe(second::set);
+        provider.tryEmitValue("image");
+
+        assertThat(first.get()).isEqualTo("image");
+        assertThat(second.get()).isEqualTo("image");
+        assertThat(subscriptions.get()).isEqualTo(1);
+        assertThat(coalesced.get()).isEqualTo(1);
+        assertThat(flights.size()).isZero();
+    }
+
+    @Test
+    void leaderCancellingDoesNotCancelWaiters() {
+        SingleFlight<String, String> flights = new SingleFlight<>(() -> { });
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Sinks.One<String> provider = Sinks.one();
+        Supplier<Mono<String>> call = () -> provider.asMono().doOnCancel(() -> cancelled.set(true));
+
+        Disposable leader = flights.executeReactive("key", call).subscribe();
+        AtomicReference<String> waiter = new AtomicReference<>();
+        flights.executeReactive("key", call).subscribe(waiter::set);
+        leader.dispose();
+        provider.tryEmitValue("image");
+
+        assertThat(cancelled.get()).isFalse();
+        assertThat(waiter.get()).isEqualTo("image");
+    }
+
+    @Test
+    void callIsCancelledOnceEveryCallerHasGone() {
+        SingleFlight<String, String> flights = new SingleFlight<>(() -> { });
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Supplier<Mono<String>> call = () -> Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+
+        Disposable first = flights.executeReactive("key", call).subscribe();
+        Disposable second = flights.executeReactive("key", call).subscribe();
+        first.dispose();
+        assertThat(cancelled.get()).isFalse();
+        second.dispose();
+
+        assertThat(cancelled.get()).isTrue();
+        assertThat(flights.size()).isZero();
+
+        // A later caller starts a fresh call rather than joining the abandoned one
+        assertThat(flights.executeReactive("key", () -> Mono.just("image")).block()).isEqualTo("image");
+    }
+
+    @Test
+    void emptyCallCompletesEveryCallerEmpty() {
+        SingleFlight<String, String> flights = new SingleFlight<>(() -> { });
+
+        assertThat(flights.executeReactive("key", Mono::empty).blockOptional()).isEmpty();
+    }
+}
@@ -0,0 +1,167 @@
+package com.room.decorator.inference;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MicroBatcherTest {
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private MicroBatcher<Integer, String> batcher;
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    @Test
+    void collectsConcurrentInputsIntoOneBatchAndAnswersEachInOrder() throws Exception {
+        batcher = new MicroBatcher<>("test", 4, 200, 1, 16, this::label, new SimpleMeterRegistry());
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(batcher.submit(i));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).isEqualTo("label-" + i);
+        }
+        assertThat(batches).containsExactly(List.of(0, 1, 2, 3));
+    }
+
+    @Test
+    void splitsInputsBeyondTheMaximumBatchSize() throws Exception {
+        batcher = new MicroBatcher<>("test", 2, 200, 1, 16, this::label, new SimpleMeterRegistry());
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(batcher.submit(i));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(2));
+        assertThat(batches.stream().flatMap(List::stream).collect(Collectors.toList())).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    void doesNotHoldALoneInputPastTheMaximumWait() throws Exception {
+        batcher = new MicroBatcher<>("test", 8, 20, 1, 16, this::label, new SimpleMeterRegistry());
+
+        assertThat(batcher.submit(7).get(5, TimeUnit.SECONDS)).isEqualTo("label-7");
+        assertThat(batches).containsExactly(List.of(7));
+    }
+
+    @Test
+    void skipsInputsWhoseCallerCancelled() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        batcher = new MicroBatcher<>("test", 4, 50, 1, 16, inputs -> {
+            if (inputs.contains(0)) {
+                running.countDown();
+                release.await();
+            }
+            return label(inputs);
+        }, new SimpleMeterRegistry());
+
+        // Keep the only worker busy so the next inputs wait in the queue
+        CompletableFuture<String> first = batcher.submit(0);
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> cancelled = batcher.submit(1);
+        CompletableFuture<String> wanted = batcher.submit(2);
+        cancelled.cancel(true);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("label-0");
+        assertThat(wanted.get(5, TimeUnit.SECONDS)).isEqualTo("label-2");
+        assertThat(batches).containsExactly(List.of(0), List.of(2));
+    }
+
+    @Test
+    void failedBatchFailsEveryCaller() {
+        batcher = new MicroBatcher<>("test", 2, 200, 1, 16, inputs -> {
+            throw new IllegalStateException("model failed");
+        }, new SimpleMeterRegistry());
+
+        CompletableFuture<String> first = batcher.submit(0);
+        CompletableFuture<String> second = batcher.submit(1);
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        batcher = new MicroBatcher<>("test", 1, 0, 1, 1, inputs -> {
+            running.countDown();
+            release.await();
+            return label(inputs);
+        }, new SimpleMeterRegistry());
+
+        batcher.submit(0);
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = batcher.submit(1);
+        CompletableFuture<String> overflow = batcher.submit(2);
+
+        assertRejected(overflow);
+        release.countDown();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("label-1");
+    }
+
+    @Test
+    void closeWaitsForTheRunningBatchAndRejectsTheRest() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        batcher = new MicroBatcher<>("test", 1, 0, 1, 16, inputs -> {
+            running.countDown();
+            // Uninterruptible, like a native forward pass
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                    // keep running until released
+                }
+            }
+            return label(inputs);
+        }, new SimpleMeterRegistry());
+
+        CompletableFuture<String> inFlight = batcher.submit(0);
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = batcher.submit(1);
+
+        assertThat(batcher.close(50, TimeUnit.MILLISECONDS)).isFalse();
+        assertRejected(queued);
+        assertRejected(batcher.submit(2));
+
+        release.countDown();
+        assertThat(batcher.close(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(inFlight.get(5, TimeUnit.SECONDS)).isEqualTo("label-0");
+    }
+
+    private List<String> label(List<Integer> inputs) {
+        batches.add(List.copyOf(inputs));
+        return inputs.stream().map(i -> "label-" + i).collect(Collectors.toList());
+    }
+
+    private static void assertRejected(CompletableFuture<String> future) {
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+}
@@ -0,0 +1,143 @@
+package com.room.decorator.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class ProviderRateLimiterTest {
+
+    @Test
+    void shedsOnceTheRequestBucketIsEmpty() throws Exception {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 2, 0, 4, 1, 4, 0);
+
+        assertThat(limiter.call(0, () -> "first")).isEqualTo("first");
+        assertThat(limiter.call(0, () -> "second")).isEqualTo("second");
+
+        assertThatThrownBy(() -> limiter.call(0, () -> "third"))
+            .isInstanceOfSatisfying(RateLimitExceededException.class, e -> {
+                assertThat(e.getProvider()).isEqualTo("test");
+                // 2 per minute refills one request every 30 s
+                assertThat(e.getRetryAfterMs()).isBetween(29_000L, 30_000L);
+            });
+        assertThat(limiter.getShedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void tokenBucketChargesTheCallCost() throws Exception {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 1000, 4, 1, 4, 0);
+
+        limiter.call(800, () -> "large");
+
+        assertThat(limiter.tryAcquire(300)).isFalse();
+        assertThat(limiter.tryAcquire(200)).isTrue();
+    }
+
+    @Test
+    void concurrencyLimitCountsCallsInFlight() throws Exception {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 1, 1, 4, 0);
+
+        limiter.call(0, () -> {
+            assertThat(limiter.getInFlight()).isEqualTo(1);
+            assertThatThrownBy(() -> limiter.call(0, () -> "nested")).isInstanceOf(RateLimitExceededException.class);
+            return null;
+        });
+
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.tryAcquire(0)).isTrue();
+    }
+
+    @Test
+    void successesRaiseTheConcurrencyLimitAdditively() throws Exception {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 2, 1, 4, 0);
+
+        limiter.call(0, () -> "ok");
+
+        assertThat(limiter.getConcurrencyLimit()).isCloseTo(2.5, within(1e-9));
+    }
+
+    @Test
+    void overloadHalvesTheLimitAndHoldsOffUntilRetryAfter() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 4, 1, 8, 0);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "2");
+        HttpServerErrorException overloaded = HttpServerErrorException.create(
+            HttpStatus.SERVICE_UNAVAILABLE, "busy", headers, new byte[0], null);
+
+        // Reported like a local shed, so callers back off instead of falling back to a placeholder
+        assertThatThrownBy(() -> limiter.call(0, () -> {
+            throw overloaded;
+        })).isInstanceOfSatisfying(RateLimitExceededException.class, e -> {
+            assertThat(e.getRetryAfterMs()).isEqualTo(2_000L);
+            assertThat(e).hasCause(overloaded);
+        });
+
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(2.0);
+        assertThatThrownBy(() -> limiter.call(0, () -> "too early"))
+            .isInstanceOfSatisfying(RateLimitExceededException.class, 
+                                    e -> assertThat(e.getRetryAfterMs()).isBetween(1_000L, 2_000L));
+    }
+
+    @Test
+    void reactiveTooManyRequestsIsShedWithADefaultRetry() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 4, 1, 8, 0);
+        WebClientResponseException tooMany = WebClientResponseException.create(
+            HttpStatus.TOO_MANY_REQUESTS.value(), "slow down", new HttpHeaders(), new byte[0], null);
+
+        assertThatThrownBy(() -> limiter.callReactive(0, () -> Mono.error(tooMany)).block())
+            .isInstanceOfSatisfying(RateLimitExceededException.class, 
+                                    e -> assertThat(e.getRetryAfterMs()).isEqualTo(1_000L));
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void serverErrorsOtherThanUnavailablePassThrough() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 4, 1, 8, 0);
+        HttpServerErrorException broken = HttpServerErrorException.create(
+            HttpStatus.INTERNAL_SERVER_ERROR, "boom", new HttpHeaders(), new byte[0], null);
+
+        assertThatThrownBy(() -> limiter.call(0, () -> {
+            throw broken;
+        })).isSameAs(broken);
+    }
+
+    @Test
+    void otherErrorsLeaveTheLimitAlone() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 4, 1, 8, 0);
+
+        assertThatThrownBy(() -> limiter.call(0, () -> {
+            throw new IllegalStateException("bad response");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(4.0);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void reactiveCallReleasesItsSlotWhenCancelled() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 1, 1, 4, 0);
+
+        limiter.callReactive(0, Mono::never).subscribe().dispose();
+
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.callReactive(0, () -> Mono.just("next")).block()).isEqualTo("next");
+    }
+
+    @Test
+    void reactiveCallReleasesItsSlotWhenTheSupplierThrows() {
+        ProviderRateLimiter limiter = new ProviderRateLimiter("test", 0, 0, 1, 1, 4, 0);
+
+        assertThatThrownBy(() -> limiter.callReactive(0, () -> {
+            throw new IllegalStateException("could not build the request");
+        }).block()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.callReactive(0, () -> Mono.just("next")).block()).isEqualTo("next");
+    }
+}
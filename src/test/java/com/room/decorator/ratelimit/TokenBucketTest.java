@@ -0,0 +1,45 @@
+package com.room.decorator.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void startsFullAndEmptiesAsTokensAreTaken() {
+        TokenBucket bucket = new TokenBucket(60, 0);
+
+        assertThat(bucket.nanosUntilAvailable(60, 0)).isZero();
+        bucket.take(60, 0);
+
+        // One token per second at 60 per minute
+        assertThat(bucket.nanosUntilAvailable(1, 0)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void refillsContinuouslyUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(60, 0);
+        bucket.take(60, 0);
+
+        assertThat(bucket.nanosUntilAvailable(30, MINUTE / 2)).isZero();
+        // Idle for far longer than a minute still only refills to capacity
+        assertThat(bucket.nanosUntilAvailable(61, 10 * MINUTE)).isZero();
+        bucket.take(60, 10 * MINUTE);
+        assertThat(bucket.nanosUntilAvailable(1, 10 * MINUTE)).isPositive();
+    }
+
+    @Test
+    void costAboveCapacityIsClampedSoItCanSucceed() {
+        TokenBucket bucket = new TokenBucket(100, 0);
+        bucket.take(1, 0);
+
+        long wait = bucket.nanosUntilAvailable(10_000, 0);
+        assertThat(wait).isPositive().isLessThanOrEqualTo(MINUTE);
+        assertThat(bucket.nanosUntilAvailable(10_000, wait)).isZero();
+    }
+}
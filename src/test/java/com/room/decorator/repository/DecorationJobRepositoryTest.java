@@ -0,0 +1,81 @@
+package com.room.decorator.repository;
+
+import com.room.decorator.model.DecorationJob;
+import com.room.decorator.model.DecorationRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+class DecorationJobRepositoryTest {
+
+    @Autowired
+    private DecorationJobRepository jobRepository;
+
+    // The bulk updates bypass the test transaction's persistence context, so reads after them start afresh
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void claimIsACompareAndSetThatCountsTheAttempt() {
+        save("job", DecorationJob.Status.QUEUED, 0);
+
+        assertThat(jobRepository.claim("job", DecorationJob.Status.QUEUED, DecorationJob.Status.RUNNING, Instant.now())).isEqualTo(1);
+        // A second worker racing for the same job loses
+        assertThat(jobRepository.claim("job", DecorationJob.Status.QUEUED, DecorationJob.Status.RUNNING, Instant.now())).isZero();
+
+        entityManager.clear();
+        DecorationJob job = jobRepository.findById("job").orElseThrow();
+        assertThat(job.getStatus()).isEqualTo(DecorationJob.Status.RUNNING);
+        assertThat(job.getAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    void jobsBackingOffAreNotReadyUntilTheirNotBefore() {
+        Instant now = Instant.now();
+        save("ready", DecorationJob.Status.QUEUED, 0);
+        DecorationJob waiting = save("waiting", DecorationJob.Status.QUEUED, 1);
+        waiting.setNotBefore(now.plusSeconds(60));
+        jobRepository.saveAndFlush(waiting);
+
+        assertThat(jobRepository.findReadyIds(DecorationJob.Status.QUEUED, now, PageRequest.of(0, 10)))
+            .containsExactly("ready");
+        assertThat(jobRepository.findReadyIds(DecorationJob.Status.QUEUED, now.plusSeconds(61), PageRequest.of(0, 10)))
+            .containsExactlyInAnyOrder("ready", "waiting");
+    }
+
+    @Test
+    void recoveryFailsExhaustedJobsAndRequeuesTheRest() {
+        save("exhausted", DecorationJob.Status.RUNNING, 5);
+        save("interrupted", DecorationJob.Status.RUNNING, 2);
+        save("done", DecorationJob.Status.COMPLETED, 5);
+
+        Instant now = Instant.now();
+        assertThat(jobRepository.failExhausted(DecorationJob.Status.RUNNING, DecorationJob.Status.FAILED, 5, "Interrupted", now))
+            .isEqualTo(1);
+        assertThat(jobRepository.transitionAll(DecorationJob.Status.RUNNING, DecorationJob.Status.QUEUED, now))
+            .isEqualTo(1);
+
+        entityManager.clear();
+        DecorationJob exhausted = jobRepository.findById("exhausted").orElseThrow();
+        assertThat(exhausted.getStatus()).isEqualTo(DecorationJob.Status.FAILED);
+        assertThat(exhausted.getErrorMessage()).isEqualTo("Interrupted");
+        assertThat(exhausted.getImageData()).isNull();
+        assertThat(jobRepository.findById("interrupted").orElseThrow().getStatus()).isEqualTo(DecorationJob.Status.QUEUED);
+        assertThat(jobRepository.findById("done").orElseThrow().getStatus()).isEqualTo(DecorationJob.Status.COMPLETED);
+    }
+
+    private DecorationJob save(String id, DecorationJob.Status status, int attempts) {
+        DecorationJob job = new DecorationJob(id, new byte[] {1, 2, 3},
+                                              new DecorationRequest("modern", null, null, "medium", true, false));
+        job.setStatus(status);
+        job.setAttempts(attempts);
+        return jobRepository.saveAndFlush(job);
+    }
+}
@@ -0,0 +1,96 @@
+package com.room.decorator.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    @Test
+    void staysClosedUntilTheMinimumNumberOfCalls() {
+        CircuitBreaker circuit = new CircuitBreaker("test", 10, 50, 4, 60_000, 1);
+
+        circuit.onFailure();
+        circuit.onFailure();
+        circuit.onFailure();
+
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuit.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    void opensWhenTheFailureRateCrossesTheThresholdAndRejects() {
+        CircuitBreaker circuit = new CircuitBreaker("test", 4, 50, 4, 60_000, 1);
+
+        circuit.onSuccess();
+        circuit.onSuccess();
+        circuit.onFailure();
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        circuit.onFailure();
+
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuit.isCallPermitted()).isFalse();
+        assertThat(circuit.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void onlyTheLastWindowOfCallsCounts() {
+        CircuitBreaker circuit = new CircuitBreaker("test", 4, 50, 4, 60_000, 1);
+
+        circuit.onFailure();
+        for (int i = 0; i < 4; i++) {
+            circuit.onSuccess();
+        }
+        // The early failure has slid out of the window, so one more is 1 of 4
+        circuit.onFailure();
+
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpensAfterTheOpenPeriodAndClosesOnSuccessfulTrials() {
+        CircuitBreaker circuit = openCircuit(2);
+
+        assertThat(circuit.tryAcquirePermission()).isTrue();
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuit.tryAcquirePermission()).isTrue();
+        // Only the configured number of trial calls get through
+        assertThat(circuit.tryAcquirePermission()).isFalse();
+
+        circuit.onSuccess();
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        circuit.onSuccess();
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void failedTrialReopens() {
+        CircuitBreaker circuit = openCircuit(1);
+
+        assertThat(circuit.tryAcquirePermission()).isTrue();
+        circuit.onFailure();
+
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void ignoredTrialFreesItsSlot() {
+        CircuitBreaker circuit = openCircuit(1);
+
+        assertThat(circuit.tryAcquirePermission()).isTrue();
+        assertThat(circuit.isCallPermitted()).isFalse();
+        circuit.onIgnored();
+
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuit.tryAcquirePermission()).isTrue();
+    }
+
+    // An open period of 0 lets the next permission request move straight to half-open
+    private static CircuitBreaker openCircuit(int halfOpenCalls) {
+        CircuitBreaker circuit = new CircuitBreaker("test", 2, 50, 2, 0, halfOpenCalls);
+        circuit.onFailure();
+        circuit.onFailure();
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        return circuit;
+    }
+}
@@ -0,0 +1,107 @@
+package com.room.decorator.resilience;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.room.decorator.ratelimit.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProviderGuardTest {
+
+    // Opens on the first failure, so each test shows whether one error counted against the provider
+    private final CircuitBreaker circuit = new CircuitBreaker("test", 1, 100, 1, 60_000, 1);
+    private final ProviderGuard guard = new ProviderGuard("test", circuit, 2, 0);
+
+    @Test
+    void serverErrorsTimeoutsAndConnectErrorsOpenTheCircuit() {
+        assertCounted(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+        assertCounted(new TimeoutException("no answer"));
+        assertCounted(new ResourceAccessException("I/O error", new ConnectException("refused")));
+    }
+
+    @Test
+    void parseErrorsBugsAndLocalSheddingAreIgnored() {
+        assertIgnored(new JsonParseException(null, "unexpected token"));
+        assertIgnored(new NullPointerException());
+        assertIgnored(new RateLimitExceededException("test", 1000));
+        assertIgnored(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS));
+    }
+
+    @Test
+    void clientErrorsCountAsAnAnswer() {
+        assertIgnored(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    void rejectsWhileTheCircuitIsOpen() {
+        circuit.onFailure();
+
+        assertThatThrownBy(() -> guard.call(() -> "image"))
+            .isInstanceOf(ProviderUnavailableException.class);
+        assertThat(guard.getCircuitRejections()).isEqualTo(1);
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondTheLimitWithoutQueueing() throws Exception {
+        guard.call(() -> guard.call(() -> {
+            assertThatThrownBy(() -> guard.call(() -> "third"))
+                .isInstanceOf(ProviderUnavailableException.class);
+            return null;
+        }));
+
+        assertThat(guard.getBulkheadRejections()).isEqualTo(1);
+        assertThat(guard.getAvailableConcurrency()).isEqualTo(2);
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void slowSuccessCountsAsFailure() throws Exception {
+        ProviderGuard slowGuard = new ProviderGuard("test", circuit, 1, 1);
+
+        slowGuard.call(() -> {
+            Thread.sleep(20);
+            return "late";
+        });
+
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void reactiveCallFreesItsSlotWhenTheSupplierThrows() {
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> guard.callReactive(() -> {
+                throw new IllegalStateException("could not build the request");
+            }).block()).isInstanceOf(IllegalStateException.class);
+        }
+
+        assertThat(guard.getAvailableConcurrency()).isEqualTo(2);
+        assertThat(guard.callReactive(() -> Mono.just("image")).block()).isEqualTo("image");
+    }
+
+    private void assertCounted(Exception error) {
+        CircuitBreaker fresh = new CircuitBreaker("test", 1, 100, 1, 60_000, 1);
+        assertThatThrownBy(() -> new ProviderGuard("test", fresh, 1, 0).call(failing(error))).isSameAs(error);
+        assertThat(fresh.getState()).as("%s counted", error).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void assertIgnored(Exception error) {
+        assertThatThrownBy(() -> guard.call(failing(error))).isSameAs(error);
+        assertThat(circuit.getState()).as("%s ignored", error).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private static Callable<String> failing(Exception error) {
+        return () -> {
+            throw error;
+        };
+    }
+}
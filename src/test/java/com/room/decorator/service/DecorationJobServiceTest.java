@@ -0,0 +1,181 @@
+package com.room.decorator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.room.decorator.model.DecorationJob;
+import com.room.decorator.model.DecorationRequest;
+import com.room.decorator.model.DecorationResponse;
+import com.room.decorator.observability.PipelineObservations;
+import com.room.decorator.ratelimit.RateLimitExceededException;
+import com.room.decorator.repository.DecorationJobRepository;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DecorationJobServiceTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final DecorationJobRepository jobRepository = mock(DecorationJobRepository.class);
+    private final RoomDecorationService roomDecorationService = mock(RoomDecorationService.class);
+    private DecorationJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        jobService = new DecorationJobService();
+        ReflectionTestUtils.setField(jobService, "workers", 1);
+        ReflectionTestUtils.setField(jobService, "maxAttempts", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(jobService, "jobRepository", jobRepository);
+        ReflectionTestUtils.setField(jobService, "roomDecorationService", roomDecorationService);
+        ReflectionTestUtils.setField(jobService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(jobService, "observations", new PipelineObservations(ObservationRegistry.NOOP));
+        jobService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    void recoveryFailsExhaustedJobsBeforeRequeueingTheRest() {
+        jobService.recoverJobs();
+
+        var order = inOrder(jobRepository);
+        order.verify(jobRepository).failExhausted(eq(DecorationJob.Status.RUNNING), eq(DecorationJob.Status.FAILED),
+                                                  eq(MAX_ATTEMPTS), anyString(), any(Instant.class));
+        order.verify(jobRepository).transitionAll(eq(DecorationJob.Status.RUNNING), eq(DecorationJob.Status.QUEUED),
+                                                  any(Instant.class));
+        order.verify(jobRepository).findReadyIds(eq(DecorationJob.Status.QUEUED), any(Instant.class), any(Pageable.class));
+    }
+
+    @Test
+    void rateLimitedJobIsRequeuedWithABackoff() throws Exception {
+        DecorationJob job = queueJob(1);
+        when(roomDecorationService.decorate(any(), any())).thenThrow(new RateLimitExceededException("openai", 30_000));
+
+        Instant before = Instant.now();
+        jobService.drainQueue();
+
+        DecorationJob saved = savedJob();
+        assertThat(saved.getStatus()).isEqualTo(DecorationJob.Status.QUEUED);
+        assertThat(saved.getNotBefore()).isAfterOrEqualTo(before.plusMillis(30_000));
+        // The upload is needed again for the next attempt
+        assertThat(saved.getImageData()).isEqualTo(job.getImageData());
+    }
+
+    @Test
+    void rateLimitedJobFailsOnceItHasUsedEveryAttempt() throws Exception {
+        queueJob(MAX_ATTEMPTS);
+        when(roomDecorationService.decorate(any(), any())).thenThrow(new RateLimitExceededException("openai", 30_000));
+
+        jobService.drainQueue();
+
+        DecorationJob saved = savedJob();
+        assertThat(saved.getStatus()).isEqualTo(DecorationJob.Status.FAILED);
+        assertThat(saved.getErrorMessage()).startsWith("Provider quota exhausted after " + MAX_ATTEMPTS + " attempts");
+        assertThat(saved.getImageData()).isNull();
+    }
+
+    @Test
+    void otherFailuresFailTheJobStraightAway() throws Exception {
+        queueJob(1);
+        when(roomDecorationService.decorate(any(), any())).thenThrow(new IllegalStateException("bad upload"));
+
+        jobService.drainQueue();
+
+        DecorationJob saved = savedJob();
+        assertThat(saved.getStatus()).isEqualTo(DecorationJob.Status.FAILED);
+        assertThat(saved.getErrorMessage()).isEqualTo("bad upload");
+    }
+
+    @Test
+    void shutdownLetsARunningJobFinish() throws Exception {
+        ReflectionTestUtils.setField(jobService, "shutdownTimeoutSeconds", 5L);
+        queueJob(1);
+        CountDownLatch started = new CountDownLatch(1);
+        when(roomDecorationService.decorate(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            Thread.sleep(200);
+            return new DecorationResponse();
+        });
+
+        jobService.drainQueue();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        jobService.shutdown();
+
+        assertThat(savedJob().getStatus()).isEqualTo(DecorationJob.Status.COMPLETED);
+    }
+
+    @Test
+    void jobInterruptedByShutdownIsLeftForRecovery() throws Exception {
+        ReflectionTestUtils.setField(jobService, "shutdownTimeoutSeconds", 0L);
+        queueJob(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        when(roomDecorationService.decorate(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                // Like the real pipeline: restore the flag and hand back placeholder options
+                Thread.currentThread().interrupt();
+            } finally {
+                finished.countDown();
+            }
+            return new DecorationResponse();
+        });
+
+        jobService.drainQueue();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        jobService.shutdown();
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The stored job stays RUNNING with its upload, so recovery re-queues it
+        verify(jobRepository, after(200).never()).save(any());
+        // Nothing more is claimed once the pool is shut down
+        jobService.drainQueue();
+        verify(jobRepository, times(1)).claim(any(), any(), any(), any());
+    }
+
+    // A queued job whose claim has already counted the given attempt
+    private DecorationJob queueJob(int attempts) {
+        DecorationJob job = new DecorationJob("job", new byte[] {1, 2, 3},
+                                              new DecorationRequest("modern", null, null, "medium", true, false));
+        job.setStatus(DecorationJob.Status.RUNNING);
+        job.setAttempts(attempts);
+        when(jobRepository.findReadyIds(eq(DecorationJob.Status.QUEUED), any(Instant.class), any(Pageable.class)))
+            .thenReturn(List.of("job"), List.of());
+        when(jobRepository.claim(eq("job"), eq(DecorationJob.Status.QUEUED), eq(DecorationJob.Status.RUNNING), any(Instant.class)))
+            .thenReturn(1);
+        when(jobRepository.findById("job")).thenReturn(Optional.of(job));
+        return job;
+    }
+
+    private DecorationJob savedJob() {
+        ArgumentCaptor<DecorationJob> saved = ArgumentCaptor.forClass(DecorationJob.class);
+        verify(jobRepository, timeout(5000)).save(saved.capture());
+        return saved.getValue();
+    }
+}
@@ -0,0 +1,58 @@
+package com.room.decorator.service;
+
+import com.room.decorator.image.ImageBuffer;
+import com.room.decorator.image.ImagePreprocessor;
+import com.room.decorator.observability.PipelineObservations;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+import reactor.core.Disposable;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageAnalysisServiceTest {
+
+    private final ImagePreprocessor imagePreprocessor = mock(ImagePreprocessor.class);
+    private final ImagePreprocessor.PreparedImage preparedImage = mock(ImagePreprocessor.PreparedImage.class);
+
+    @Test
+    void reactiveAnalysisCancelledWhilePreparingStillReleasesTheImage() throws Exception {
+        ImageAnalysisService service = new ImageAnalysisService(mock(ExecutorService.class), mock(RestTemplate.class));
+        ReflectionTestUtils.setField(service, "analysisCache", mock(RoomAnalysisCache.class));
+        ReflectionTestUtils.setField(service, "imagePreprocessor", imagePreprocessor);
+        ReflectionTestUtils.setField(service, "observations", new PipelineObservations(ObservationRegistry.NOOP));
+        ReflectionTestUtils.setField(service, "visionMode", "always");
+
+        CountDownLatch preparing = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        when(imagePreprocessor.prepare(any())).thenAnswer(invocation -> {
+            preparing.countDown();
+            // Uninterruptible, like the native decode
+            while (finish.getCount() > 0) {
+                try {
+                    finish.await();
+                } catch (InterruptedException ignored) {
+                    // keep preparing until released
+                }
+            }
+            return preparedImage;
+        });
+
+        Disposable analysis = service.analyzeRoomReactive(ImageBuffer.wrap(new byte[] {1, 2, 3})).subscribe();
+        assertThat(preparing.await(5, TimeUnit.SECONDS)).isTrue();
+        analysis.dispose();
+        finish.countDown();
+
+        verify(preparedImage, timeout(5000)).release();
+    }
+}
@@ -0,0 +1,125 @@
+package com.room.decorator.service;
+
+import com.room.decorator.storage.ImageStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RenderCacheTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final InMemoryImageStore imageStore = new InMemoryImageStore();
+    private RenderCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RenderCache(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSizeMb", 1L);
+        ReflectionTestUtils.setField(cache, "imageStore", imageStore);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedRenderOnceOverTheSizeBound() {
+        put("a", 400_000);
+        put("b", 400_000);
+        // Reading a makes b the least recently used
+        assertThat(cache.get("a")).isNotNull();
+
+        put("c", 400_000);
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("c")).isNotNull();
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getTotalBytes()).isEqualTo(800_000);
+    }
+
+    @Test
+    void evictsAsManyRendersAsNeededForALargeOne() {
+        put("a", 300_000);
+        put("b", 300_000);
+        put("c", 300_000);
+
+        put("d", MB - 100_000);
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("d")).isNotNull();
+        assertThat(cache.getEvictions()).isEqualTo(3);
+    }
+
+    @Test
+    void evictionLeavesTheStoredImageInPlace() {
+        put("a", 600_000);
+        put("b", 600_000);
+
+        assertThat(cache.get("a")).isNull();
+        // Earlier responses may still link to it
+        assertThat(imageStore.find("image-a")).isPresent();
+    }
+
+    @Test
+    void replacingAKeyCountsItsSizeOnce() {
+        put("a", 400_000);
+        put("a", 500_000);
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getTotalBytes()).isEqualTo(500_000);
+        assertThat(cache.getEvictions()).isZero();
+    }
+
+    @Test
+    void dropsEntriesWhoseImageWasDeleted() {
+        put("a", 400_000);
+        imageStore.delete("image-a");
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getTotalBytes()).isZero();
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void disabledCacheStoresNothing() {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+
+        put("a", 400_000);
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("a")).isNull();
+    }
+
+    private void put(String key, long size) {
+        String imageId = "image-" + key;
+        imageStore.images.put(imageId, new ImageStore.StoredImage(imageId, new ByteArrayResource(new byte[0]), "image/png", size));
+        cache.put(key, imageId, size);
+    }
+
+    private static class InMemoryImageStore implements ImageStore {
+        private final Map<String, StoredImage> images = new ConcurrentHashMap<>();
+
+        @Override
+        public String store(byte[] imageData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<StoredImage> find(String imageId) {
+            return Optional.ofNullable(images.get(imageId));
+        }
+
+        @Override
+        public boolean delete(String imageId) {
+            return images.remove(imageId) != null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.room.decorator.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSystemImageStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private FileSystemImageStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new FileSystemImageStore();
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "retentionHours", 24L);
+        store.init();
+    }
+
+    @Test
+    void sweepDeletesImagesPastTheirRetention() throws Exception {
+        String expired = store.store(new byte[] {1, 2, 3});
+        String fresh = store.store(new byte[] {4, 5, 6});
+        age(expired, 25);
+        age(fresh, 23);
+
+        store.deleteExpired();
+
+        assertThat(store.find(expired)).isEmpty();
+        assertThat(store.find(fresh)).isPresent();
+    }
+
+    @Test
+    void storingAnImageAgainRestartsItsRetention() throws Exception {
+        String imageId = store.store(new byte[] {1, 2, 3});
+        age(imageId, 25);
+
+        assertThat(store.store(new byte[] {1, 2, 3})).isEqualTo(imageId);
+        store.deleteExpired();
+
+        assertThat(store.find(imageId)).isPresent();
+    }
+
+    @Test
+    void sweepRemovesAbandonedTempFilesButLeavesOtherFilesAlone() throws Exception {
+        Path temp = Files.createFile(directory.resolve("upload-123.tmp"));
+        Path other = Files.createFile(directory.resolve("notes.txt"));
+        Files.setLastModifiedTime(temp, hoursAgo(25));
+        Files.setLastModifiedTime(other, hoursAgo(25));
+
+        store.deleteExpired();
+
+        assertThat(temp).doesNotExist();
+        assertThat(other).exists();
+    }
+
+    @Test
+    void zeroRetentionKeepsImagesForever() throws Exception {
+        ReflectionTestUtils.setField(store, "retentionHours", 0L);
+        String imageId = store.store(new byte[] {1, 2, 3});
+        age(imageId, 24 * 365);
+
+        store.deleteExpired();
+
+        assertThat(store.find(imageId)).isPresent();
+    }
+
+    private void age(String imageId, long hours) throws Exception {
+        Files.setLastModifiedTime(directory.resolve(imageId), hoursAgo(hours));
+    }
+
+    private static FileTime hoursAgo(long hours) {
+        return FileTime.from(Instant.now().minus(hours, ChronoUnit.HOURS));
+    }
+}